@@ -44,6 +44,8 @@ import com.hardcodedjoy.audioinput.AudioCable;
 import com.hardcodedjoy.audioinput.MicInput;
 import com.hardcodedjoy.noisoid.Noisoid;
 import com.hardcodedjoy.noisoid.Source;
+import com.hardcodedjoy.wavfileio.AsyncWavFileWriter;
+import com.hardcodedjoy.wavfileio.PrefetchingWavFileReader;
 import com.hardcodedjoy.wavfileio.WavFileReader;
 import com.hardcodedjoy.wavfileio.WavFileWriter;
 
@@ -62,8 +64,8 @@ public class CvMain extends CvTMLL {
     private int bufferIndex;
     private int indexInBuffer;
 
-    private WavFileWriter wavFileWriter;
-    private WavFileReader wavFileReader;
+    private AsyncWavFileWriter wavFileWriter;
+    private PrefetchingWavFileReader wavFileReader;
     private Noisoid noisoid;
 
     private TextView tvStatus;
@@ -100,7 +102,8 @@ public class CvMain extends CvTMLL {
         if(wavFileWriter != null) { wavFileWriter.close(); }
 
         File file = new File(getTestFilePath());
-        wavFileWriter = new WavFileWriter(file, SAMPLE_RATE, NUM_CHANNELS, 16);
+        wavFileWriter = new AsyncWavFileWriter(
+                new WavFileWriter(file, SAMPLE_RATE, NUM_CHANNELS, 16), 1000);
         boolean success = wavFileWriter.open();
         if(!success) {
             wavFileWriter = null;
@@ -150,15 +153,12 @@ public class CvMain extends CvTMLL {
 
             float[] filledBuffer = buffer[bufferIndex];
 
-            new Thread() {
-                @Override
-                public void run() {
-                    WavFileWriter w = CvMain.this.wavFileWriter;
-                    if(w == null) { return; }
-                    setStatus("recording " + w.getDurationMicros());
-                    w.write(filledBuffer, 0, filledBuffer.length, false);
-                }
-            }.start();
+            // copied to a ring buffer, written to file by a background thread:
+            AsyncWavFileWriter w = wavFileWriter;
+            if(w != null) {
+                w.write(filledBuffer, 0, filledBuffer.length, false);
+                setStatus("recording " + w.getDurationMicros());
+            }
 
             // switch buffer:
             bufferIndex++;
@@ -180,6 +180,11 @@ public class CvMain extends CvTMLL {
 
         if(noisoid != null) { noisoid.stop(); }
 
+        if(wavFileReader != null) {
+            wavFileReader.close();
+            wavFileReader = null;
+        }
+
         setStatus("stopped");
     }
 
@@ -189,7 +194,10 @@ public class CvMain extends CvTMLL {
         noisoid.start();
 
         try {
-            wavFileReader = new WavFileReader(new File(getTestFilePath()));
+            // decoded ahead by a background thread, readTo() only copies:
+            wavFileReader = new PrefetchingWavFileReader(
+                    new WavFileReader(new File(getTestFilePath())), 500);
+            wavFileReader.start();
         } catch (Exception e) {
             wavFileReader = null;
             noisoid.stop();
@@ -199,8 +207,10 @@ public class CvMain extends CvTMLL {
         Source source = new Source() {
             @Override
             public void readTo(float[] buf, int offset, int len) {
-                setStatus("playing " + wavFileReader.getPosMicros());
-                int read = wavFileReader.read(buf, offset, len, false);
+                PrefetchingWavFileReader r = wavFileReader;
+                if(r == null) { return; }
+                setStatus("playing " + r.getPosMicros());
+                int read = r.read(buf, offset, len, false);
                 if(read == 0) { onStop(); }
             }
         };
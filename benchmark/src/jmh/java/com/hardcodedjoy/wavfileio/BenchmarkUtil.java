@@ -0,0 +1,58 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+
+class BenchmarkUtil {
+
+	static final int SAMPLE_RATE = 48000;
+	static final int NUM_CHANNELS = 2;
+
+	static float[] createSamples(int len) {
+		float[] samples = new float[len];
+		for(int i=0; i<len; i++) {
+			samples[i] = 0.8f * (float)Math.sin(i * 0.0123);
+		}
+		return samples;
+	}
+
+	static File createWavFile(int bitsPerSample, int seconds) throws Exception {
+		File file = File.createTempFile("wavfileio-bench-" + bitsPerSample + "-", ".wav");
+		file.deleteOnExit();
+
+		WavFileWriter writer = new WavFileWriter(file, SAMPLE_RATE, NUM_CHANNELS, bitsPerSample);
+		if(!writer.open()) { throw new Exception("can not open " + file); }
+
+		float[] samples = createSamples(SAMPLE_RATE * NUM_CHANNELS);
+		for(int i=0; i<seconds; i++) {
+			writer.write(samples, 0, samples.length, false);
+		}
+		writer.close();
+		return file;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// throughput in samples/s of every convertN kernel
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FloatBufferToByteBufferBenchmark {
+
+	static private final int SAMPLES = 4800 * BenchmarkUtil.NUM_CHANNELS; // 100ms @ 48kHz
+
+	@Param({"32", "24", "16", "12", "10", "8", "7", "6", "5", "4", "3", "2", "1"})
+	public int bitsPerSample;
+
+	@Param({"false", "true"})
+	public boolean swapLR;
+
+	private float[] samples;
+	private byte[] byteBuffer;
+
+	@Setup
+	public void setup() {
+		samples = BenchmarkUtil.createSamples(SAMPLES);
+		byteBuffer = new byte[SAMPLES * 4];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void convert(Blackhole bh) {
+		FloatBufferToByteBuffer.convert(samples, 0, SAMPLES, swapLR, bitsPerSample, byteBuffer);
+		bh.consume(byteBuffer);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.concurrent.TimeUnit;
+
+// headers/s of WavFileHeader.fromInputStream, from memory (parsing cost)
+// and from an unbuffered FileInputStream (parsing + syscall cost)
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WavFileHeaderBenchmark {
+
+	private byte[] headerBytes;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		WavFileHeader header = new WavFileHeader(BenchmarkUtil.SAMPLE_RATE, BenchmarkUtil.NUM_CHANNELS, 16);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		header.getHeader(baos);
+		headerBytes = baos.toByteArray();
+
+		file = BenchmarkUtil.createWavFile(16, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Benchmark
+	public WavFileHeader fromMemory() throws Exception {
+		return WavFileHeader.fromInputStream(new ByteArrayInputStream(headerBytes));
+	}
+
+	@Benchmark
+	public WavFileHeader fromFile() throws Exception {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			return WavFileHeader.fromInputStream(fis);
+		} finally {
+			fis.close();
+		}
+	}
+}
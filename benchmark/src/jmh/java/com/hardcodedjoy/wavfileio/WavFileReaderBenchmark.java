@@ -0,0 +1,85 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// throughput in samples/s of WavFileReader.read, per bit depth and read mode
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WavFileReaderBenchmark {
+
+	static private final int SAMPLES = 7200 * BenchmarkUtil.NUM_CHANNELS; // 150ms @ 48kHz
+
+	@Param({"8", "16", "24", "32"})
+	public int bitsPerSample;
+
+	@Param({"0", "1"}) // 0: stream, 1: WavFileReader.FLAG_MEMORY_MAPPED
+	public int flags;
+
+	private File file;
+	private WavFileReader reader;
+	private float[] dest;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = BenchmarkUtil.createWavFile(bitsPerSample, 30);
+		reader = new WavFileReader(file, flags);
+		dest = new float[SAMPLES];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		reader.close();
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void read(Blackhole bh) {
+		int read = reader.read(dest, 0, SAMPLES, false);
+		if(read < SAMPLES) { reader.seek(0); } // loop
+		bh.consume(dest);
+	}
+}
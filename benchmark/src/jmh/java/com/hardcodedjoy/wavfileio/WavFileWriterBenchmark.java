@@ -0,0 +1,92 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// end-to-end samples/s of open() + write() + close() on a temp file,
+// with audio callback sized blocks
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WavFileWriterBenchmark {
+
+	static private final int SECONDS = 2;
+	static private final int TOTAL_SAMPLES = SECONDS * BenchmarkUtil.SAMPLE_RATE * BenchmarkUtil.NUM_CHANNELS;
+
+	@Param({"8", "16", "24", "32"})
+	public int bitsPerSample;
+
+	@Param({"10", "150"})
+	public int blockMillis;
+
+	private File file;
+	private float[] samples;
+	private int blockLen;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		file = File.createTempFile("wavfileio-bench-out-", ".wav");
+		file.deleteOnExit();
+		blockLen = blockMillis * BenchmarkUtil.SAMPLE_RATE * BenchmarkUtil.NUM_CHANNELS / 1000;
+		samples = BenchmarkUtil.createSamples(blockLen);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOTAL_SAMPLES)
+	public long writeAndClose() throws Exception {
+		WavFileWriter writer = new WavFileWriter(file, BenchmarkUtil.SAMPLE_RATE,
+				BenchmarkUtil.NUM_CHANNELS, bitsPerSample);
+		if(!writer.open()) { throw new Exception("can not open " + file); }
+
+		for(int written = 0; written < TOTAL_SAMPLES; written += blockLen) {
+			writer.write(samples, 0, Math.min(blockLen, TOTAL_SAMPLES - written), false);
+		}
+		writer.close();
+		return writer.getFileSizeInBytes();
+	}
+}
@@ -0,0 +1,178 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// WavFileWriter with a background I/O thread:
+// write() only copies into a preallocated single-producer / single-consumer ring,
+// it never blocks and never allocates -> safe to call from the audio thread
+// (one producer thread only)
+
+public class AsyncWavFileWriter {
+
+	static private final long PARK_NANOS = 10000000L; // 10ms, max. I/O thread sleep
+	static private final int DRAIN_MILLIS = 100; // max. written to file in one step
+
+	private final WavFileWriter writer;
+	private final int numChannels;
+	private final int sampleRate;
+	private final float[] ring;
+	private final int capacity; // samples, multiple of numChannels
+	private final int drainBlock; // samples, multiple of numChannels
+
+	// ever increasing sample positions (ring index = pos % capacity):
+	private final AtomicLong writePos = new AtomicLong(); // by audio thread
+	private final AtomicLong readPos = new AtomicLong(); // by I/O thread
+
+	private final AtomicLong overrunCount = new AtomicLong();
+	private final AtomicLong droppedSamples = new AtomicLong(); // ring full
+	private final AtomicLong lostSamples = new AtomicLong(); // write to file failed
+
+	private Thread ioThread;
+	private volatile boolean running;
+
+	public AsyncWavFileWriter(WavFileWriter writer, int bufferMillis) {
+		this.writer = writer;
+		this.numChannels = writer.getNumChannels();
+		this.sampleRate = writer.getSampleRate();
+
+		long frames = ((long) writer.getSampleRate() * bufferMillis) / 1000;
+		capacity = (int) Math.max(frames, 1) * numChannels;
+		ring = new float[capacity];
+
+		int drainFrames = writer.getSampleRate() * DRAIN_MILLIS / 1000;
+		drainBlock = Math.max(Math.min(drainFrames * numChannels, capacity), numChannels);
+	}
+
+	public boolean open() {
+		if(!writer.open()) { return false; }
+
+		running = true;
+		ioThread = new Thread("AsyncWavFileWriter") {
+			@Override
+			public void run() { drainLoop(); }
+		};
+		ioThread.setDaemon(true);
+		ioThread.start();
+		return true;
+	}
+
+	public WavFileWriter getWavFileWriter() { return writer; }
+
+	// returns number of samples accepted, the rest is dropped (counted as overrun)
+	// len should be a multiple of numChannels
+	public int write(float[] samples, int offset, int len, boolean swapLR) {
+		long w = writePos.get();
+		long r = readPos.get();
+
+		int free = capacity - (int)(w - r);
+		int n = len;
+		if(n > free) {
+			n = (free / numChannels) * numChannels;
+			overrunCount.incrementAndGet();
+			droppedSamples.addAndGet(len - n);
+		}
+
+		int index = (int)(w % capacity);
+		int first = Math.min(n, capacity - index);
+
+		if(swapLR) {
+			// 1, 0, 3, 2, 5, 4, 7, 6, 9, ...
+			for(int i=0, v=1; i<n; i++, v=-v) {
+				ring[(index + i) % capacity] = samples[offset + i + v];
+			}
+		} else {
+			System.arraycopy(samples, offset, ring, index, first);
+			System.arraycopy(samples, offset + first, ring, 0, n - first);
+		}
+
+		writePos.lazySet(w + n);
+
+		// wake up the I/O thread early if more than half full:
+		if((w + n) - r > capacity / 2) { LockSupport.unpark(ioThread); }
+
+		return n;
+	}
+
+	private void drainLoop() {
+		long r;
+		long w;
+		int index;
+		int n;
+		int written;
+
+		while(true) {
+			r = readPos.get();
+			w = writePos.get();
+
+			if(w == r) {
+				if(!running && writePos.get() == r) { break; } // all written
+				LockSupport.parkNanos(this, PARK_NANOS);
+				continue;
+			}
+
+			index = (int)(r % capacity);
+			n = (int) Math.min(w - r, drainBlock);
+			n = Math.min(n, capacity - index);
+
+			written = writer.write(ring, index, n, false);
+			if(written < n) { lostSamples.addAndGet(n - written); }
+
+			readPos.lazySet(r + n);
+		}
+	}
+
+	// writes what is still in the ring, then closes the file
+	// (call after the last write())
+	public void close() {
+		running = false;
+		if(ioThread != null) {
+			LockSupport.unpark(ioThread);
+			try {
+				ioThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ioThread = null;
+		}
+		writer.close();
+	}
+
+	public long getOverrunCount() { return overrunCount.get(); }
+	public long getDroppedSamples() { return droppedSamples.get(); }
+	public long getLostSamples() { return lostSamples.get(); }
+	public int getBufferedSamples() { return (int)(writePos.get() - readPos.get()); }
+
+	// from the samples accepted by write(), does not lock the writer (busy with file I/O)
+	// -> safe to call from the audio thread
+	public long getDurationMicros() {
+		long frames = (writePos.get() - lostSamples.get()) / numChannels;
+		return (frames * 1000000) / sampleRate;
+	}
+}
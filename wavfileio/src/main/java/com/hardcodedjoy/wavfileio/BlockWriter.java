@@ -0,0 +1,79 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// coalesces small writes into big blocks in a reusable direct ByteBuffer
+// -> few big write() syscalls instead of one per audio callback
+
+class BlockWriter {
+
+	static final int DEFAULT_BLOCK_SIZE = 256 * 1024; // 256KB
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer block;
+	private long writtenBytes; // to the channel
+	private long lostBytes; // dropped, channel write failed
+
+	BlockWriter(WritableByteChannel channel, int blockSize) {
+		this.channel = channel;
+		this.block = ByteBuffer.allocateDirect(Math.max(blockSize, 4096));
+	}
+
+	void write(byte[] src, int offset, int len) throws IOException {
+		int n;
+		while(len > 0) {
+			n = Math.min(len, block.remaining());
+			block.put(src, offset, n);
+			offset += n;
+			len -= n;
+			if(!block.hasRemaining()) { flush(); }
+		}
+	}
+
+	// writes the pending bytes to the channel
+	// if that fails, the bytes not written are dropped (counted as lost)
+	// -> next write() starts with an empty block
+	void flush() throws IOException {
+		block.flip();
+		try {
+			while(block.hasRemaining()) { writtenBytes += channel.write(block); }
+		} finally {
+			lostBytes += block.remaining();
+			block.clear();
+		}
+	}
+
+	int getPendingBytes() { return block.position(); }
+
+	// bytes written to the channel + pending (lost bytes not included)
+	long getSize() { return writtenBytes + block.position(); }
+	long getLostBytes() { return lostBytes; }
+}
@@ -0,0 +1,76 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+// shared pool of byte buffers, so that opening and closing
+// many readers / writers does not allocate every time
+
+class BufferPool {
+
+	static private final int MIN_SIZE_SHIFT = 12; // 4KB
+	static private final int MAX_SIZE_SHIFT = 26; // 64MB, bigger buffers are not pooled
+	static private final int MAX_PER_SIZE = 8;
+	static private final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+	// free buffers, per size class (power of 2):
+	static private final byte[][][] free = new byte[MAX_SIZE_SHIFT + 1][MAX_PER_SIZE][];
+	static private final int[] freeCount = new int[MAX_SIZE_SHIFT + 1];
+	static private long pooledBytes;
+
+	// returned buffer can be bigger than minSize
+	static synchronized byte[] acquire(int minSize) {
+		int shift = sizeShift(minSize);
+		if(shift > MAX_SIZE_SHIFT) { return new byte[minSize]; }
+
+		if(freeCount[shift] > 0) {
+			int n = --freeCount[shift];
+			byte[] buffer = free[shift][n];
+			free[shift][n] = null;
+			pooledBytes -= buffer.length;
+			return buffer;
+		}
+		return new byte[1 << shift];
+	}
+
+	static synchronized void release(byte[] buffer) {
+		if(buffer == null) { return; }
+		int shift = sizeShift(buffer.length);
+		if(shift > MAX_SIZE_SHIFT) { return; } // not pooled
+		if(buffer.length != (1 << shift)) { return; } // not from this pool
+		if(freeCount[shift] == MAX_PER_SIZE) { return; }
+		if(pooledBytes + buffer.length > MAX_POOLED_BYTES) { return; }
+
+		free[shift][freeCount[shift]++] = buffer;
+		pooledBytes += buffer.length;
+	}
+
+	static private int sizeShift(int size) {
+		int shift = MIN_SIZE_SHIFT;
+		while(shift < 31 && (1 << shift) < size) { shift++; }
+		return shift;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// decoded float frames of wav files, in fixed size blocks, shared by many readers
+// (WavFileReader.setBlockCache()): scrubbing over the same regions is served from memory
+// least recently used blocks are dropped above maxBytes
+// optional read-ahead: next blocks in the scrub direction are decoded by a background thread
+
+public class DecodedBlockCache {
+
+	static public final int DEFAULT_BLOCK_FRAMES = 16384;
+
+	// file identity + block index
+	static private final class Key {
+		private final String file;
+		private final long block;
+
+		Key(String file, long block) {
+			this.file = file;
+			this.block = block;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) { return false; }
+			Key k = (Key) o;
+			return block == k.block && file.equals(k.file);
+		}
+
+		@Override
+		public int hashCode() { return file.hashCode() * 31 + (int)(block ^ (block >>> 32)); }
+	}
+
+	private final int blockFrames;
+	private long maxBytes;
+	private long usedBytes;
+	private int readAheadBlocks;
+
+	private final LinkedHashMap<Key, float[]> blocks = new LinkedHashMap<>(64, 0.75f, true); // access order
+	private final HashSet<Key> pending = new HashSet<>(); // read-ahead queued
+	private final HashMap<String, Long> lastBlock = new HashMap<>(); // per file, for scrub direction
+
+	private long hitCount;
+	private long missCount;
+	private ExecutorService executor; // read-ahead, created when first needed
+
+	public DecodedBlockCache(long maxBytes) {
+		this(maxBytes, DEFAULT_BLOCK_FRAMES);
+	}
+
+	public DecodedBlockCache(long maxBytes, int blockFrames) {
+		this.maxBytes = maxBytes;
+		this.blockFrames = Math.max(blockFrames, 1);
+	}
+
+	// number of blocks decoded ahead in the scrub direction (0 = off)
+	synchronized public void setReadAhead(int blocks) { readAheadBlocks = Math.max(blocks, 0); }
+
+	synchronized public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public int getBlockFrames() { return blockFrames; }
+
+	// frames of block [blockIndex * blockFrames, ...) of reader, interleaved
+	// (last block of a file is shorter), decoded if not cached
+	float[] getBlock(WavFileReader reader, String fileKey, long blockIndex) {
+		Key key = new Key(fileKey, blockIndex);
+		float[] block;
+
+		synchronized (this) {
+			block = blocks.get(key);
+			if(block != null) { hitCount++; } else { missCount++; }
+			readAhead(reader, fileKey, blockIndex);
+		}
+		if(block != null) { return block; }
+
+		block = decode(reader, blockIndex); // not locked, other readers go on
+		if(block == null) { return new float[0]; } // read failed, nothing cached
+		return put(key, block);
+	}
+
+	// returns null if the read failed or was short (closed reader, I/O error)
+	// -> silence is never cached for the file
+	private float[] decode(WavFileReader reader, long blockIndex) {
+		long start = blockIndex * blockFrames;
+		int frames = (int) Math.max(Math.min(blockFrames, reader.getFrameCount() - start), 0);
+		float[] block = new float[frames * reader.getNumChannels()];
+		// positional, does not move the reader:
+		if(reader.readFrames(start, block, 0, frames) < frames) { return null; }
+		return block;
+	}
+
+	// returns the cached block (put now or by another thread before)
+	synchronized private float[] put(Key key, float[] block) {
+		float[] cached = blocks.get(key);
+		if(cached != null) { return cached; }
+		blocks.put(key, block);
+		usedBytes += block.length * 4L;
+		evict();
+		return block;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key, float[]>> it = blocks.entrySet().iterator();
+		while(usedBytes > maxBytes && it.hasNext()) {
+			usedBytes -= it.next().getValue().length * 4L; // least recently used first
+			it.remove();
+		}
+	}
+
+	// called locked
+	private void readAhead(final WavFileReader reader, final String fileKey, long blockIndex) {
+		Long last = lastBlock.put(fileKey, blockIndex);
+		if(readAheadBlocks == 0 || last == null || last == blockIndex) { return; }
+
+		int direction = (blockIndex > last) ? 1 : -1;
+		long blockCount = (reader.getFrameCount() + blockFrames - 1) / blockFrames;
+
+		for(int i=1; i<=readAheadBlocks; i++) {
+			final long b = blockIndex + (long) i * direction;
+			if(b < 0 || b >= blockCount) { break; }
+			final Key key = new Key(fileKey, b);
+			if(blocks.containsKey(key) || pending.contains(key)) { continue; }
+
+			pending.add(key);
+			getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					float[] block = reader.isClosed() ? null : decode(reader, b);
+					if(block != null) { put(key, block); }
+					synchronized (DecodedBlockCache.this) { pending.remove(key); }
+				}
+			});
+		}
+	}
+
+	private ExecutorService getExecutor() {
+		if(executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "DecodedBlockCache");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	// reader of the file closed or not using this cache any more (scrub direction forgotten)
+	synchronized void release(String fileKey) { lastBlock.remove(fileKey); }
+
+	synchronized public void clear() {
+		blocks.clear();
+		pending.clear();
+		lastBlock.clear();
+		usedBytes = 0;
+	}
+
+	synchronized public long getUsedBytes() { return usedBytes; }
+	synchronized public long getMaxBytes() { return maxBytes; }
+	synchronized public long getHitCount() { return hitCount; }
+	synchronized public long getMissCount() { return missCount; }
+}
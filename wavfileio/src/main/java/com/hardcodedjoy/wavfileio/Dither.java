@@ -0,0 +1,165 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// dither for conversion to less than 16 bits per sample
+// each instance has its own xorshift PRNG (no shared lock like Math.random())
+// -> use one instance per thread / writer, instances are not thread-safe
+
+public abstract class Dither {
+
+	static public final int TYPE_RECTANGULAR = 0;
+	static public final int TYPE_TPDF = 1; // triangular
+	static public final int TYPE_NOISE_SHAPED = 2; // TPDF + error feedback
+
+	static private final AtomicLong seedUniquifier = new AtomicLong(0x5DEECE66DL);
+
+	final int numChannels;
+	private final long seed;
+	private int state;
+
+	Dither(int numChannels, long seed) {
+		this.numChannels = Math.max(numChannels, 1);
+		this.seed = seed;
+		state = (int)(seed ^ (seed >>> 32));
+		if(state == 0) { state = 0x9E3779B9; } // xorshift state must not be 0
+	}
+
+	static public Dither create(int type, int numChannels) {
+		long seed = seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime();
+		return create(type, numChannels, seed);
+	}
+
+	// same type + seed -> same output
+	static public Dither create(int type, int numChannels, long seed) {
+		switch (type) {
+			case TYPE_TPDF: return new Tpdf(numChannels, seed);
+			case TYPE_NOISE_SHAPED: return new NoiseShaped(numChannels, seed);
+			default: return new Rectangular(numChannels, seed);
+		}
+	}
+
+	public abstract int getType();
+	public int getNumChannels() { return numChannels; }
+	public long getSeed() { return seed; }
+
+	// new instance, same type, fresh state:
+	public Dither copy(long seed) { return create(getType(), numChannels, seed); }
+
+	// uniform, in [-0.5, 0.5)
+	final float nextRandom() {
+		int x = state;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		state = x;
+		return (x >>> 8) * (1.0f / 16777216) - 0.5f;
+	}
+
+	// seed for a copy(), taken from this PRNG -> deterministic
+	final long nextSeed() {
+		long hi = (long)(nextRandom() * 16777216) & 0xFFFFFF;
+		long lo = (long)(nextRandom() * 16777216) & 0xFFFFFF;
+		return (hi << 24) | lo | 1;
+	}
+
+	// returns the sample to quantize
+	// amount = width of the dither noise (1 / 2^bits)
+	abstract float apply(float sample, int channel, float amount);
+
+	// quantized = value actually written (float scale), for error feedback
+	void feedback(int channel, float quantized) {}
+
+
+	static final class Rectangular extends Dither {
+		Rectangular(int numChannels, long seed) { super(numChannels, seed); }
+
+		@Override
+		public int getType() { return TYPE_RECTANGULAR; }
+
+		@Override
+		float apply(float sample, int channel, float amount) {
+			return sample + nextRandom() * amount;
+		}
+	}
+
+	static final class Tpdf extends Dither {
+		Tpdf(int numChannels, long seed) { super(numChannels, seed); }
+
+		@Override
+		public int getType() { return TYPE_TPDF; }
+
+		@Override
+		float apply(float sample, int channel, float amount) {
+			return sample + (nextRandom() + nextRandom()) * amount;
+		}
+	}
+
+	// 2nd order error feedback: the quantization error is pushed
+	// to high frequencies, where it is less audible
+	static final class NoiseShaped extends Dither {
+
+		static private final float C1 =  2.0f;
+		static private final float C2 = -1.0f;
+
+		private final float[] e1; // last error, per channel
+		private final float[] e2; // error before last, per channel
+		private final float[] value; // value before adding noise, per channel
+		private final float[] maxError;
+
+		NoiseShaped(int numChannels, long seed) {
+			super(numChannels, seed);
+			e1 = new float[this.numChannels];
+			e2 = new float[this.numChannels];
+			value = new float[this.numChannels];
+			maxError = new float[this.numChannels];
+		}
+
+		@Override
+		public int getType() { return TYPE_NOISE_SHAPED; }
+
+		@Override
+		float apply(float sample, int channel, float amount) {
+			float v = sample - (C1 * e1[channel] + C2 * e2[channel]);
+			value[channel] = v;
+			maxError[channel] = 4 * amount;
+			return v + (nextRandom() + nextRandom()) * amount;
+		}
+
+		@Override
+		void feedback(int channel, float quantized) {
+			float e = quantized - value[channel];
+			// clipped samples would make the loop unstable:
+			float max = maxError[channel];
+			if(e > max) { e = max; } else if(e < -max) { e = -max; }
+			e2[channel] = e1[channel];
+			e1[channel] = e;
+		}
+	}
+}
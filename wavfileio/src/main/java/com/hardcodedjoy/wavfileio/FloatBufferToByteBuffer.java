@@ -26,8 +26,23 @@ SOFTWARE.
 
 package com.hardcodedjoy.wavfileio;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class FloatBufferToByteBuffer {
 
+    // blocks of at least PARALLEL_THRESHOLD samples are converted in parallel,
+    // in chunks of CHUNK_FRAMES frames (fixed -> same output for any number of cores)
+    static public final int PARALLEL_THRESHOLD = 262144;
+    static private final int CHUNK_FRAMES = 32768;
+    static private ForkJoinPool pool;
+
+    // used when no Dither is given, one per thread (no lock contention):
+    static private final ThreadLocal<Dither> defaultDither = new ThreadLocal<Dither>() {
+        @Override
+        protected Dither initialValue() { return Dither.create(Dither.TYPE_RECTANGULAR, 1); }
+    };
+
     // non-swap:
     // 0, 1, 2, 3, 4, 5, 6, 7, 8, ...
     //0, 0+1, 2, 2+1, 4, 4+1
@@ -38,32 +53,133 @@ public class FloatBufferToByteBuffer {
     // i+1, i-1, i+1, i-1, ...
 
     static public void convert(float[] samples, int offset, int len, boolean swapLR, int bitsPerSample, byte[] byteBuffer) {
+        convert(samples, offset, len, swapLR, bitsPerSample, byteBuffer, defaultDither.get());
+    }
+
+    static public void convert(float[] samples, int offset, int len, boolean swapLR, int bitsPerSample, byte[] byteBuffer, Dither dither) {
+        convert(samples, offset, len, swapLR, bitsPerSample, byteBuffer, 0, dither);
+    }
+
+    static public void convert(float[] samples, int offset, int len, boolean swapLR, int bitsPerSample, byte[] byteBuffer, int byteOffset, Dither dither) {
         switch (bitsPerSample) {
-            case 32: convert32(samples, offset, len, swapLR, byteBuffer); break;
-            case 24: convert24(samples, offset, len, swapLR, byteBuffer); break;
-            case 16: convert16(samples, offset, len, swapLR, byteBuffer); break;
-            case 12: convert12(samples, offset, len, swapLR, byteBuffer); break;
-            case 10: convert10(samples, offset, len, swapLR, byteBuffer); break;
-            case  8: convert8 (samples, offset, len, swapLR, byteBuffer); break;
-            case  7: convert7 (samples, offset, len, swapLR, byteBuffer); break;
-            case  6: convert6 (samples, offset, len, swapLR, byteBuffer); break;
-            case  5: convert5 (samples, offset, len, swapLR, byteBuffer); break;
-            case  4: convert4 (samples, offset, len, swapLR, byteBuffer); break;
-            case  3: convert3 (samples, offset, len, swapLR, byteBuffer); break;
-            case  2: convert2 (samples, offset, len, swapLR, byteBuffer); break;
-            case  1: convert1 (samples, offset, len, swapLR, byteBuffer); break;
+            case 32: convert32(samples, offset, len, swapLR, byteBuffer, byteOffset); break;
+            case 24: convert24(samples, offset, len, swapLR, byteBuffer, byteOffset); break;
+            case 16: convert16(samples, offset, len, swapLR, byteBuffer, byteOffset); break;
+            case 12: convert12(samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case 10: convert10(samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  8: convert8 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  7: convert7 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  6: convert6 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  5: convert5 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  4: convert4 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  3: convert3 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  2: convert2 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
+            case  1: convert1 (samples, offset, len, swapLR, byteBuffer, byteOffset, dither); break;
             default: break;
         }
     }
 
+    // number of bytes per sample in byteBuffer
+    static public int getBytesPerSample(int bitsPerSample) {
+        if(bitsPerSample > 16) { return bitsPerSample / 8; }
+        if(bitsPerSample >  8) { return 2; } // 12, 10 -> 16-bit
+        return 1; // 7 ... 1 -> 8-bit
+    }
+
+    // same as convert(), but big blocks are split on frame boundaries and converted
+    // in parallel, into disjoint ranges of byteBuffer
+    // each chunk uses its own copy of dither, seeded from dither -> deterministic
+    static public void convertParallel(float[] samples, int offset, int len, boolean swapLR,
+                                       int bitsPerSample, byte[] byteBuffer, int byteOffset,
+                                       int numChannels, Dither dither) {
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if(len < PARALLEL_THRESHOLD || cores < 2) {
+            convert(samples, offset, len, swapLR, bitsPerSample, byteBuffer, byteOffset, dither);
+            return;
+        }
+
+        int chunkLen = CHUNK_FRAMES * numChannels;
+        if(swapLR && (chunkLen & 1) == 1) { chunkLen *= 2; } // keep L/R pairs together
+        int chunks = (len + chunkLen - 1) / chunkLen;
+
+        long[] seeds = new long[chunks];
+        for(int i=0; i<chunks; i++) { seeds[i] = dither.nextSeed(); }
+
+        getPool().invoke(new ConvertTask(samples, offset, len, swapLR, bitsPerSample,
+                byteBuffer, byteOffset, dither, seeds, chunkLen, 0, chunks));
+    }
+
+    static private synchronized ForkJoinPool getPool() {
+        if(pool == null) { pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors()); }
+        return pool;
+    }
+
+    @SuppressWarnings("serial")
+    static private class ConvertTask extends RecursiveAction {
+
+        private final float[] samples;
+        private final int offset;
+        private final int len;
+        private final boolean swapLR;
+        private final int bitsPerSample;
+        private final byte[] byteBuffer;
+        private final int byteOffset;
+        private final Dither dither;
+        private final long[] seeds;
+        private final int chunkLen;
+        private final int fromChunk;
+        private final int toChunk;
+
+        ConvertTask(float[] samples, int offset, int len, boolean swapLR, int bitsPerSample,
+                    byte[] byteBuffer, int byteOffset, Dither dither, long[] seeds,
+                    int chunkLen, int fromChunk, int toChunk) {
+            this.samples = samples;
+            this.offset = offset;
+            this.len = len;
+            this.swapLR = swapLR;
+            this.bitsPerSample = bitsPerSample;
+            this.byteBuffer = byteBuffer;
+            this.byteOffset = byteOffset;
+            this.dither = dither;
+            this.seeds = seeds;
+            this.chunkLen = chunkLen;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if(toChunk - fromChunk > 1) {
+                int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(
+                        new ConvertTask(samples, offset, len, swapLR, bitsPerSample, byteBuffer,
+                                byteOffset, dither, seeds, chunkLen, fromChunk, mid),
+                        new ConvertTask(samples, offset, len, swapLR, bitsPerSample, byteBuffer,
+                                byteOffset, dither, seeds, chunkLen, mid, toChunk));
+                return;
+            }
+
+            int start = fromChunk * chunkLen;
+            int n = Math.min(chunkLen, len - start);
+            int bytesPerSample = getBytesPerSample(bitsPerSample);
+            convert(samples, offset + start, n, swapLR, bitsPerSample, byteBuffer,
+                    byteOffset + start * bytesPerSample, dither.copy(seeds[fromChunk]));
+        }
+    }
+
     static public void convert32(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert32(samples, offset, len, swapLR, byteBuffer, 0);
+    }
+
+    static public void convert32(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
             fSample = limit(samples[i+v]);
 
             //sample = (long)(fSample * 2147483647); // 32-bit integer
@@ -77,13 +193,17 @@ public class FloatBufferToByteBuffer {
     }
 
     static public void convert24(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert24(samples, offset, len, swapLR, byteBuffer, 0);
+    }
+
+    static public void convert24(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
             fSample = limit(samples[i+v]);
             sample = (long)(fSample * 8388607);
             byteBuffer[j++] = (byte)sample; sample = sample >> 8;
@@ -93,13 +213,17 @@ public class FloatBufferToByteBuffer {
     }
 
     static public void convert16(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert16(samples, offset, len, swapLR, byteBuffer, 0);
+    }
+
+    static public void convert16(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
             fSample = limit(samples[i+v]);
             sample = (long)(fSample * 32767);
             byteBuffer[j++] = (byte)sample; sample = sample >> 8;
@@ -108,15 +232,20 @@ public class FloatBufferToByteBuffer {
     }
 
     static public void convert12(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert12(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert12(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.000244141f; // * 1 / 4096
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.000244141f); // * 1 / 4096
             fSample = limit(fSample);
 
             sample = (long)(fSample * 32767);
@@ -125,21 +254,29 @@ public class FloatBufferToByteBuffer {
             sample = sample >> 4;
             sample = sample << 4;
 
+            dither.feedback(ch, sample / 32767.0f);
+            if(++ch == numChannels) { ch = 0; }
+
             byteBuffer[j++] = (byte)sample; sample = sample >> 8;
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert10(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert10(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert10(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.000976562f; // * 1 / 1024
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.000976562f); // * 1 / 1024
             fSample = limit(fSample);
 
             sample = (long)(fSample * 32767);
@@ -148,147 +285,206 @@ public class FloatBufferToByteBuffer {
             sample = sample >> 6;
             sample = sample << 6;
 
+            dither.feedback(ch, sample / 32767.0f);
+            if(++ch == numChannels) { ch = 0; }
+
             byteBuffer[j++] = (byte)sample; sample = sample >> 8;
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert8(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert8(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert8(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.00390625f; // * 1 / 256
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.00390625f); // * 1 / 256
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert7(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert7(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert7(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.0078125f; // * 1 / 128
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.0078125f); // * 1 / 128
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 2;
             sample *= 2;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert6(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert6(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert6(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.015625f; // * 1 / 64
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.015625f); // * 1 / 64
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 4;
             sample *= 4;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert5(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert5(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert5(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.03125f; // * 1 / 32
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.03125f); // * 1 / 32
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 8;
             sample *= 8;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert4(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert4(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert4(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.0625f; // * 1 / 16
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.0625f); // * 1 / 16
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 16;
             sample *= 16;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert3(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert3(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert3(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.125f; // * 1 / 8
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.125f); // * 1 / 8
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 32;
             sample *= 32;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert2(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert2(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert2(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.25f; // * 1 / 4
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.25f); // * 1 / 4
             fSample = limit(fSample);
             sample = ((long)(fSample * 127)) + 127;
             sample = (sample) / 64;
             sample *= 64;
+            dither.feedback(ch, (sample - 127) / 127.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
 
     static public void convert1(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer) {
+        convert1(samples, offset, len, swapLR, byteBuffer, 0, defaultDither.get());
+    }
+
+    static public void convert1(float[] samples, int offset, int len, boolean swapLR, byte[] byteBuffer, int byteOffset, Dither dither) {
         long sample;
         float fSample;
         int end = offset + len;
         int v = 0; // index variance
         if(swapLR) { v = 1; }
+        int numChannels = dither.numChannels;
+        int ch = 0; // output channel
 
-        for(int i=offset, j=0; i<end; i++, v=-v) {
-            fSample = samples[i+v];
-            fSample += ((float)Math.random() - 0.5f) * 0.5f; // * 1 / 2
+        for(int i=offset, j=byteOffset; i<end; i++, v=-v) {
+            fSample = dither.apply(samples[i+v], ch, 0.5f); // * 1 / 2
             fSample = limit(fSample);
             sample = (fSample < 0) ? 0 : 255;
+            dither.feedback(ch, (sample == 0) ? -1.0f : 1.0f);
+            if(++ch == numChannels) { ch = 0; }
             byteBuffer[j++] = (byte)sample;
         }
     }
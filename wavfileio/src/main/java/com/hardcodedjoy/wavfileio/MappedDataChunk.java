@@ -0,0 +1,102 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// maps the data chunk of a wav file as a sliding set of read-only windows
+// (a single mapping can not cover files > 2GB, and big mappings
+// exhaust the address space of 32-bit devices)
+
+class MappedDataChunk {
+
+	static private final long WINDOW_SIZE = 64L * 1024 * 1024; // 64MB per window
+	static private final int MAX_WINDOWS = 4;
+
+	private final FileChannel channel;
+	private final long dataOffset; // data chunk start, in file
+	private final long dataSize;
+	private final long windowSize; // multiple of blockAlign -> no frame crosses windows
+
+	private final MappedByteBuffer[] windows;
+	private final long[] windowIndexes;
+	private final long[] windowLastUse;
+	private long useCounter;
+
+	MappedDataChunk(FileChannel channel, long dataOffset, long dataSize, int blockAlign) {
+		this.channel = channel;
+		this.dataOffset = dataOffset;
+		this.dataSize = dataSize;
+		this.windowSize = (WINDOW_SIZE / blockAlign) * blockAlign;
+
+		windows = new MappedByteBuffer[MAX_WINDOWS];
+		windowIndexes = new long[MAX_WINDOWS];
+		windowLastUse = new long[MAX_WINDOWS];
+		for(int i=0; i<MAX_WINDOWS; i++) { windowIndexes[i] = -1; }
+	}
+
+	long getDataSize() { return dataSize; }
+
+	// pos = position relative to data chunk start
+	long getWindowStart(long pos) { return (pos / windowSize) * windowSize; }
+
+	// returns the window containing pos, index 0 of the buffer = getWindowStart(pos)
+	MappedByteBuffer getWindow(long pos) throws IOException {
+		long windowIndex = pos / windowSize;
+
+		int lru = 0;
+		for(int i=0; i<MAX_WINDOWS; i++) {
+			if(windowIndexes[i] == windowIndex) {
+				windowLastUse[i] = ++useCounter;
+				return windows[i];
+			}
+			if(windowLastUse[i] < windowLastUse[lru]) { lru = i; }
+		}
+
+		// not mapped yet -> replace least recently used window:
+		long start = windowIndex * windowSize;
+		long size = Math.min(windowSize, dataSize - start);
+		MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, size);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+
+		windows[lru] = window;
+		windowIndexes[lru] = windowIndex;
+		windowLastUse[lru] = ++useCounter;
+		return window;
+	}
+
+	void release() {
+		// mappings are released by the GC once unreferenced
+		for(int i=0; i<MAX_WINDOWS; i++) {
+			windows[i] = null;
+			windowIndexes[i] = -1;
+		}
+	}
+}
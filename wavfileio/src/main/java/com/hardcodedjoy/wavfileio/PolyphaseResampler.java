@@ -0,0 +1,228 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.util.HashMap;
+
+// streaming sample rate conversion by a rational ratio L / M (outRate / inRate, reduced):
+// output frame k is at input time k * M / L, computed from TAPS input frames around it
+// with one phase (row) of a Kaiser windowed sinc table
+// tables are computed once per ratio and shared, buffers are allocated in the constructor only
+// interleaved frames, all channels use the same phase
+
+public class PolyphaseResampler {
+
+	static private final int TAPS = 128; // per phase, for L >= M (more for downsampling)
+	static private final int MAX_PHASES = 1024; // L above this -> nearest of MAX_PHASES phases
+	static private final double KAISER_BETA = 9.0; // ~90dB stopband
+	static private final double ROLLOFF = 0.92; // cutoff, relative to the lower Nyquist frequency
+	static private final int BLOCK_FRAMES = 4096; // input buffered beyond the filter length
+
+	static private final HashMap<String, float[][]> tables = new HashMap<>();
+
+	private final int inRate;
+	private final int outRate;
+	private final int numChannels;
+	private final long l; // interpolation factor
+	private final long m; // decimation factor
+	private final int taps;
+	private final int half;
+	private final float[][] table; // [phase][tap]
+
+	private final float[] buf; // input frames, interleaved
+	private final int capacity; // frames
+	private int bufFrames;
+	private int n; // frame in buf at (or just before) the time of the next output
+	private long phase; // 0 ... l-1, time of next output = n + phase / l
+
+	public PolyphaseResampler(int inRate, int outRate, int numChannels) {
+		this.inRate = inRate;
+		this.outRate = outRate;
+		this.numChannels = numChannels;
+
+		long gcd = gcd(inRate, outRate);
+		l = outRate / gcd;
+		m = inRate / gcd;
+
+		int t = TAPS;
+		if(m > l) { t = (int) Math.ceil(TAPS * (double) m / l); } // lower cutoff -> longer filter
+		taps = t + (t & 1); // even
+		half = taps / 2;
+		table = getTable(l, m, taps);
+
+		capacity = taps + BLOCK_FRAMES;
+		buf = new float[capacity * numChannels];
+		reset(0);
+	}
+
+	static private long gcd(long a, long b) {
+		long t;
+		while(b != 0) {
+			t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	static private synchronized float[][] getTable(long l, long m, int taps) {
+		String key = l + "/" + m;
+		float[][] table = tables.get(key);
+		if(table == null) {
+			table = createTable(l, m, taps);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	static private float[][] createTable(long l, long m, int taps) {
+		int phases = (int) Math.min(l, MAX_PHASES);
+		int half = taps / 2;
+		double cutoff = Math.min(1.0, (double) l / m) * ROLLOFF; // relative to input Nyquist
+		double i0Beta = besselI0(KAISER_BETA);
+
+		float[][] table = new float[phases][taps];
+		double[] h = new double[taps];
+		double d;
+		double x;
+		double sum;
+		for(int p=0; p<phases; p++) {
+			sum = 0;
+			for(int t=0; t<taps; t++) {
+				// distance in input frames from the output time:
+				d = (t - half + 1) - (double) p / phases;
+				x = d / half;
+				h[t] = (Math.abs(x) >= 1) ? 0 : cutoff * sinc(cutoff * d)
+						* besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / i0Beta;
+				sum += h[t];
+			}
+			for(int t=0; t<taps; t++) { table[p][t] = (float)(h[t] / sum); } // DC gain 1
+		}
+		return table;
+	}
+
+	static private double sinc(double x) {
+		if(x == 0) { return 1; }
+		return Math.sin(Math.PI * x) / (Math.PI * x);
+	}
+
+	static private double besselI0(double x) {
+		double sum = 1;
+		double term = 1;
+		for(int k=1; k<50; k++) {
+			term *= (x / (2 * k)) * (x / (2 * k));
+			sum += term;
+			if(term < sum * 1e-12) { break; }
+		}
+		return sum;
+	}
+
+	// drops all buffered input, next output will be outFrame (of the whole stream)
+	// returns the input frame from which input must be given
+	public long reset(long outFrame) {
+		long time = outFrame * m;
+		long start = time / l - half + 1; // 1st input frame used
+		phase = time % l;
+
+		bufFrames = 0;
+		if(start < 0) { // before stream start -> 0
+			bufFrames = (int) -start;
+			for(int i=0; i<bufFrames * numChannels; i++) { buf[i] = 0; }
+			start = 0;
+		}
+		n = half - 1;
+		return start;
+	}
+
+	// returns the number of frames taken (less than frames if the buffer is full)
+	public int putInput(float[] in, int offset, int frames) {
+		frames = Math.min(frames, capacity - bufFrames);
+		System.arraycopy(in, offset, buf, bufFrames * numChannels, frames * numChannels);
+		bufFrames += frames;
+		return frames;
+	}
+
+	// silence after the end of the stream, for the last outputs
+	public int putZeros(int frames) {
+		frames = Math.min(frames, capacity - bufFrames);
+		int start = bufFrames * numChannels;
+		int end = start + frames * numChannels;
+		for(int i=start; i<end; i++) { buf[i] = 0; }
+		bufFrames += frames;
+		return frames;
+	}
+
+	// returns the number of frames computed (less than frames if more input is needed)
+	public int getOutput(float[] out, int offset, int frames) {
+		int phases = table.length;
+		int k = 0;
+		float[] row;
+		int base;
+		int j;
+		float sum;
+
+		while(k < frames && n + half < bufFrames) {
+			row = table[(int)(phase * phases / l)];
+			base = (n - half + 1) * numChannels;
+			for(int c=0; c<numChannels; c++) {
+				sum = 0;
+				j = base + c;
+				for(int t=0; t<taps; t++, j+=numChannels) { sum += row[t] * buf[j]; }
+				out[offset + k * numChannels + c] = sum;
+			}
+			k++;
+			phase += m;
+			n += (int)(phase / l);
+			phase %= l;
+		}
+
+		// drop input not needed any more:
+		int drop = Math.min(n - half + 1, bufFrames);
+		if(drop > 0) {
+			System.arraycopy(buf, drop * numChannels, buf, 0, (bufFrames - drop) * numChannels);
+			bufFrames -= drop;
+			n -= drop;
+		}
+		return k;
+	}
+
+	public int getFreeFrames() { return capacity - bufFrames; }
+
+	// input frames needed after the last one, for all outputs up to the end of the stream
+	public int getTailFrames() { return half; }
+
+	// number of output frames for inFrames input frames
+	public long getOutputFrames(long inFrames) { return (inFrames * l + m - 1) / m; }
+
+	// output frame <-> input time
+	public long toInputFrame(long outFrame) { return outFrame * m / l; }
+	public long toOutputFrame(long inFrame) { return inFrame * l / m; }
+
+	public int getInRate() { return inRate; }
+	public int getOutRate() { return outRate; }
+	public int getNumChannels() { return numChannels; }
+}
@@ -0,0 +1,246 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// WavFileReader with a background I/O thread that keeps prefetchMillis
+// of decoded audio ready ahead of the play position:
+// read() only copies from a preallocated ring, it never blocks on I/O
+// -> safe to call from the audio thread (one reader thread only)
+// seek() can be called from any thread
+
+public class PrefetchingWavFileReader {
+
+	static private final long PARK_NANOS = 10000000L; // 10ms, max. I/O thread sleep
+	static private final int FILL_MILLIS = 100; // max. read from file in one step
+	static private final int SEEK_FILL_MILLIS = 20; // 1st step after seek (small -> ready fast)
+	static private final long NO_SEEK = -1;
+
+	private final WavFileReader reader;
+	private final int numChannels;
+	private final long sampleRate;
+	private final float[] ring;
+	private final int capacity; // samples, multiple of numChannels
+	private final int fillBlock; // samples, multiple of numChannels
+	private final int seekFillBlock;
+
+	// ever increasing sample positions (ring index = pos % capacity):
+	private final AtomicLong writePos = new AtomicLong(); // by I/O thread
+	private final AtomicLong readPos = new AtomicLong(); // by audio thread (CAS), reset by I/O thread on seek
+
+	private final AtomicLong seekRequest = new AtomicLong(NO_SEEK); // posMicros
+	private final AtomicLong seekCount = new AtomicLong(); // incremented by seek()
+	private volatile long readyCount; // seekCount served by I/O thread, data in ring is from there
+	private volatile long seekPosMicros; // reported while seeking
+	private volatile boolean eos; // all data in ring
+
+	// play position = basePosMicros + time of (readPos - baseRingPos)
+	private volatile long basePosMicros;
+	private volatile long baseRingPos;
+
+	private final AtomicLong underrunCount = new AtomicLong();
+	private final AtomicLong underrunSamples = new AtomicLong(); // filled with 0
+
+	private Thread ioThread;
+	private volatile boolean running;
+
+	public PrefetchingWavFileReader(WavFileReader reader, int prefetchMillis) {
+		this.reader = reader;
+		this.numChannels = reader.getNumChannels();
+		this.sampleRate = reader.getSampleRate();
+
+		long frames = (sampleRate * prefetchMillis) / 1000;
+		capacity = (int) Math.max(frames, 1) * numChannels;
+		ring = new float[capacity];
+
+		fillBlock = getBlock(FILL_MILLIS);
+		seekFillBlock = getBlock(SEEK_FILL_MILLIS);
+
+		basePosMicros = reader.getPosMicros();
+	}
+
+	private int getBlock(int millis) {
+		int frames = (int)(sampleRate * millis / 1000);
+		return Math.max(Math.min(frames * numChannels, capacity), numChannels);
+	}
+
+	public void start() {
+		running = true;
+		ioThread = new Thread("PrefetchingWavFileReader") {
+			@Override
+			public void run() { fillLoop(); }
+		};
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	public WavFileReader getWavFileReader() { return reader; }
+
+	// returns len while playing (missing samples are filled with 0 and counted as underrun),
+	// less than len at the end of the file, 0 when all played
+	public int read(float[] dest, int offset, int len, boolean swapLR) {
+		long r;
+		long w;
+		int n;
+		int index;
+		int first;
+		boolean seeking;
+
+		do {
+			// seek not served yet -> ring can hold data from before the seek, not used:
+			seeking = readyCount != seekCount.get();
+			r = readPos.get();
+			w = seeking ? r : writePos.get();
+
+			n = (int) Math.min(len, w - r);
+			n = (n / numChannels) * numChannels;
+
+			index = (int)(r % capacity);
+			first = Math.min(n, capacity - index);
+
+			if(swapLR) {
+				// 1, 0, 3, 2, 5, 4, 7, 6, 9, ...
+				for(int i=0, v=1; i<n; i++, v=-v) {
+					dest[offset + i] = ring[(index + i + v) % capacity];
+				}
+			} else {
+				System.arraycopy(ring, index, dest, offset, first);
+				System.arraycopy(ring, 0, dest, offset + first, n - first);
+			}
+			// readPos reset by a seek while copying -> copied data is old, again:
+		} while(!readPos.compareAndSet(r, r + n));
+
+		// wake up the I/O thread early if less than half full:
+		if(w - (r + n) < capacity / 2) { LockSupport.unpark(ioThread); }
+
+		if(n == len) { return n; }
+
+		boolean end = !seeking && eos && writePos.get() == r + n;
+		if(end) { return n; }
+
+		for(int i=n; i<len; i++) { dest[offset + i] = 0; }
+		if(!seeking) {
+			underrunCount.incrementAndGet();
+			underrunSamples.addAndGet(len - n);
+		}
+		return len;
+	}
+
+	// prefetched data is dropped, refilled from the new position with priority
+	public void seek(long posMicros) {
+		posMicros = Math.max(posMicros, 0);
+		seekPosMicros = posMicros;
+		seekRequest.set(posMicros);
+		seekCount.incrementAndGet(); // after request -> I/O thread sees request when it sees count
+		LockSupport.unpark(ioThread);
+	}
+
+	private void fillLoop() {
+		long r;
+		long w;
+		long seek;
+		long count;
+		int index;
+		int n;
+		int read;
+		int block = fillBlock;
+
+		while(running) {
+			count = seekCount.get();
+			seek = seekRequest.getAndSet(NO_SEEK);
+			if(seek != NO_SEEK) {
+				reader.seek(seek);
+				w = writePos.get();
+				baseRingPos = w;
+				basePosMicros = reader.getPosMicros();
+				readPos.set(w); // drop prefetched data
+				eos = false;
+				block = seekFillBlock;
+			}
+
+			r = readPos.get();
+			w = writePos.get();
+
+			if(eos || w - r > capacity - numChannels) {
+				if(seekCount.get() == count) { readyCount = count; }
+				LockSupport.parkNanos(this, PARK_NANOS);
+				continue;
+			}
+
+			index = (int)(w % capacity);
+			n = (int) Math.min(capacity - (w - r), block);
+			n = Math.min(n, capacity - index);
+			n = (n / numChannels) * numChannels;
+
+			read = reader.read(ring, index, n, false);
+
+			if(seekCount.get() != count) { continue; } // data from old position, not used
+
+			if(read < n) { eos = true; }
+			writePos.set(w + read);
+			readyCount = count; // seek() after this: read() sees count changed, uses nothing
+
+			block = fillBlock;
+		}
+	}
+
+	public long getPosMicros() {
+		if(readyCount != seekCount.get()) { return seekPosMicros; }
+		long frames = (readPos.get() - baseRingPos) / numChannels;
+		return basePosMicros + (frames * 1000000) / sampleRate;
+	}
+
+	public long getDurationMicros() { return reader.getDurationMicros(); }
+
+	// stops the I/O thread and closes the file
+	public void close() {
+		running = false;
+		if(ioThread != null) {
+			LockSupport.unpark(ioThread);
+			try {
+				ioThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ioThread = null;
+		}
+		reader.close();
+	}
+
+	public long getUnderrunCount() { return underrunCount.get(); }
+	public long getUnderrunSamples() { return underrunSamples.get(); }
+	public int getPrefetchedSamples() {
+		if(readyCount != seekCount.get()) { return 0; }
+		return (int)(writePos.get() - readPos.get());
+	}
+	public boolean isEndOfStream() {
+		if(readyCount != seekCount.get()) { return false; }
+		return eos && writePos.get() == readPos.get();
+	}
+}
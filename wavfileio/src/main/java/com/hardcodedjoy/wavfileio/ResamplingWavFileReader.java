@@ -0,0 +1,128 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+// WavFileReader at another sample rate (e.g. 44.1kHz file read as 48kHz),
+// converted while reading, block by block (no full file buffer)
+
+public class ResamplingWavFileReader {
+
+	static private final int READ_FRAMES = 4096; // read from file in one step
+
+	private final WavFileReader reader;
+	private final PolyphaseResampler resampler;
+	private final int numChannels;
+	private final int sampleRate; // output
+	private final int inRate;
+	private final float[] scratch; // input read from file
+
+	private long outPos; // frames
+	private long inFrames; // input frames given to resampler (since stream start)
+	private long endFrame; // output frames in stream, known at end of input, else Long.MAX_VALUE
+	private int tailFrames; // zeros after end of input not yet given to the resampler (buffer was full)
+
+	public ResamplingWavFileReader(WavFileReader reader, int sampleRate) {
+		this.reader = reader;
+		this.numChannels = reader.getNumChannels();
+		this.sampleRate = sampleRate;
+		this.inRate = reader.getSampleRate();
+		this.resampler = new PolyphaseResampler(inRate, sampleRate, numChannels);
+		this.scratch = new float[READ_FRAMES * numChannels];
+		seek((reader.getFramePosition() * 1000000) / inRate);
+	}
+
+	// len: multiple of numChannels
+	synchronized public int read(float[] dest, int offset, int len, boolean swapLR) {
+		int frames = len / numChannels;
+		int framesRead = 0;
+		int n;
+
+		while(framesRead < frames) {
+			n = (int) Math.min(frames - framesRead, endFrame - outPos);
+			if(n <= 0) { break; } // end of stream
+
+			n = resampler.getOutput(dest, offset + framesRead * numChannels, n);
+			framesRead += n;
+			outPos += n;
+
+			if(n == 0 && !fill()) { break; } // no more input
+		}
+
+		if(swapLR && numChannels == 2) {
+			float f;
+			for(int i=offset; i<offset + framesRead * 2; i+=2) {
+				f = dest[i];
+				dest[i] = dest[i + 1];
+				dest[i + 1] = f;
+			}
+		}
+
+		return framesRead * numChannels;
+	}
+
+	// gives the resampler more input (or the tail, at end of file)
+	// returns false if there is nothing more to give
+	private boolean fill() {
+		if(endFrame != Long.MAX_VALUE) { // end of file reached before
+			int z = resampler.putZeros(tailFrames);
+			tailFrames -= z;
+			return z > 0;
+		}
+
+		int frames = Math.min(resampler.getFreeFrames(), READ_FRAMES);
+		int n = reader.read(scratch, 0, frames * numChannels, false) / numChannels;
+		if(n > 0) {
+			resampler.putInput(scratch, 0, n);
+			inFrames += n;
+		}
+		if(n < frames) { // end of file
+			endFrame = resampler.getOutputFrames(inFrames);
+			tailFrames = resampler.getTailFrames();
+			tailFrames -= resampler.putZeros(tailFrames); // rest in the next fill()
+			return true;
+		}
+		return n > 0;
+	}
+
+	// input position follows, with the filter history before it
+	synchronized public void seek(long posMicros) {
+		if(posMicros < 0) { posMicros = 0; }
+		outPos = (posMicros * sampleRate) / 1000000;
+		inFrames = resampler.reset(outPos);
+		reader.seekFrame(inFrames);
+		endFrame = Long.MAX_VALUE;
+		tailFrames = 0;
+	}
+
+	synchronized public long getPosMicros() { return (outPos * 1000000) / sampleRate; }
+	public long getDurationMicros() { return reader.getDurationMicros(); }
+	public int getSampleRate() { return sampleRate; }
+	public int getNumChannels() { return numChannels; }
+	public WavFileReader getWavFileReader() { return reader; }
+
+	synchronized public void close() { reader.close(); }
+}
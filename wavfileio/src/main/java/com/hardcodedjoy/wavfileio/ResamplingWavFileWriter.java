@@ -0,0 +1,101 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+// WavFileWriter fed at another sample rate (e.g. 48kHz pipeline -> 44.1kHz file),
+// converted while writing, block by block
+
+public class ResamplingWavFileWriter {
+
+	static private final int WRITE_FRAMES = 4096; // written to file in one step
+
+	private final WavFileWriter writer;
+	private final PolyphaseResampler resampler;
+	private final int numChannels;
+	private final int sampleRate; // input
+	private final float[] scratch; // output to file
+
+	private long inFrames;
+	private long outFrames;
+	private boolean swapLR; // of last write(), for the last outputs
+
+	// writer: at the file sample rate, sampleRate: of the samples given to write()
+	public ResamplingWavFileWriter(WavFileWriter writer, int sampleRate) {
+		this.writer = writer;
+		this.numChannels = writer.getNumChannels();
+		this.sampleRate = sampleRate;
+		this.resampler = new PolyphaseResampler(sampleRate, writer.getSampleRate(), numChannels);
+		this.scratch = new float[WRITE_FRAMES * numChannels];
+	}
+
+	public boolean open() { return writer.open(); }
+
+	// len: multiple of numChannels, returns samples taken
+	synchronized public int write(float[] samples, int offset, int len, boolean swapLR) {
+		int frames = len / numChannels;
+		int done = 0;
+		int n;
+		this.swapLR = swapLR;
+
+		while(done < frames) {
+			n = resampler.putInput(samples, offset + done * numChannels, frames - done);
+			done += n;
+			inFrames += n;
+			if(!drain(Long.MAX_VALUE, swapLR)) { break; }
+		}
+		return done * numChannels;
+	}
+
+	// writes the available output, max. until output frame end
+	// returns false if file write failed
+	private boolean drain(long end, boolean swapLR) {
+		int n;
+		while(true) {
+			n = (int) Math.min(WRITE_FRAMES, end - outFrames);
+			if(n <= 0) { return true; }
+			n = resampler.getOutput(scratch, 0, n);
+			if(n == 0) { return true; }
+			if(writer.write(scratch, 0, n * numChannels, swapLR) < n * numChannels) { return false; }
+			outFrames += n;
+		}
+	}
+
+	// writes the last outputs, then closes the file
+	synchronized public void close() {
+		long end = resampler.getOutputFrames(inFrames);
+		int tail = resampler.getTailFrames();
+		while(tail > 0) { // more than the free space in the buffer -> in steps
+			tail -= resampler.putZeros(tail);
+			if(!drain(end, swapLR)) { break; }
+		}
+		writer.close();
+	}
+
+	public int getSampleRate() { return sampleRate; }
+	public long getDurationMicros() { return writer.getDurationMicros(); }
+	public WavFileWriter getWavFileWriter() { return writer; }
+}
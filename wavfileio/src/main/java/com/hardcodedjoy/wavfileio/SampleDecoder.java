@@ -0,0 +1,403 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// decodes little-endian samples to float, with one tight loop per format,
+// picked once (when the header is known) instead of checking the format for every sample
+// (ByteBuffer sources must use ByteOrder.LITTLE_ENDIAN)
+
+abstract class SampleDecoder {
+
+	// non-swap:
+	// 0, 1, 2, 3, 4, 5, 6, 7, 8, ...
+	// swap:
+	// 1, 0, 3, 2, 5, 4, 7, 6, 9, ...
+	final boolean swapLR;
+	final int bytesPerSample;
+
+	SampleDecoder(boolean swapLR, int bytesPerSample) {
+		this.swapLR = swapLR;
+		this.bytesPerSample = bytesPerSample;
+	}
+
+	abstract void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples);
+	abstract void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples);
+
+	// one channel of interleaved data -> planar:
+	// srcOffset = 1st sample of the channel, stride = bytes per frame (blockAlign)
+	abstract void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames);
+	abstract void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames);
+
+	// integer output, no swapLR:
+	// short = 16-bit full scale, int = 32-bit full scale (lower bits truncated / zero filled)
+	abstract void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples);
+	abstract void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples);
+
+	// view of src from srcOffset, for bulk get()
+	static ByteBuffer slice(ByteBuffer src, int srcOffset) {
+		ByteBuffer bb = src.duplicate();
+		bb.position(srcOffset);
+		return bb.slice().order(ByteOrder.LITTLE_ENDIAN); // slice() is big-endian
+	}
+
+	// returns null if format not supported
+	static SampleDecoder get(int bitsPerSample, int audioFormat, boolean swapLR) {
+		switch (bitsPerSample) {
+			case 32:
+				if(audioFormat == 3) { return new Float32(swapLR); } // WAVE_FORMAT_IEEE_FLOAT
+				return new Pcm32(swapLR);
+			case 24: return new Pcm24(swapLR);
+			case 16: return new Pcm16(swapLR);
+			case  8: return new Pcm8(swapLR);
+			default: return null;
+		}
+	}
+
+	static int get32(byte[] src, int j) {
+		return (src[j+3] << 24) | ((src[j+2] & 0xFF) << 16) | ((src[j+1] & 0xFF) << 8) | (src[j] & 0xFF);
+	}
+
+	static final class Pcm8 extends SampleDecoder {
+		// 8-bit is unsigned
+		Pcm8(boolean swapLR) { super(swapLR, 1); }
+
+		@Override
+		void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=2) {
+					dest[destOffset + i    ] = ((src[j+1] & 0xFF) - 128) / 128.0f;
+					dest[destOffset + i + 1] = ((src[j] & 0xFF) - 128) / 128.0f;
+				}
+			}
+			for(; i<samples; i++, j++) {
+				dest[destOffset + i] = ((src[j] & 0xFF) - 128) / 128.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=2) {
+					dest[destOffset + i    ] = ((src.get(j+1) & 0xFF) - 128) / 128.0f;
+					dest[destOffset + i + 1] = ((src.get(j) & 0xFF) - 128) / 128.0f;
+				}
+			}
+			for(; i<samples; i++, j++) {
+				dest[destOffset + i] = ((src.get(j) & 0xFF) - 128) / 128.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = ((src[j] & 0xFF) - 128) / 128.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = ((src.get(j) & 0xFF) - 128) / 128.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=1) {
+				dest[destOffset + i] = (short)(((src.get(j) & 0xFF) - 128) << 8);
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=1) {
+				dest[destOffset + i] = ((src.get(j) & 0xFF) - 128) << 24;
+			}
+		}
+	}
+
+	static final class Pcm16 extends SampleDecoder {
+		// high byte keeps the sign
+		Pcm16(boolean swapLR) { super(swapLR, 2); }
+
+		@Override
+		void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=4) {
+					dest[destOffset + i    ] = ((src[j+3] << 8) | (src[j+2] & 0xFF)) / 32768.0f;
+					dest[destOffset + i + 1] = ((src[j+1] << 8) | (src[j] & 0xFF)) / 32768.0f;
+				}
+			}
+			for(; i<samples; i++, j+=2) {
+				dest[destOffset + i] = ((src[j+1] << 8) | (src[j] & 0xFF)) / 32768.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=4) {
+					dest[destOffset + i    ] = src.getShort(j+2) / 32768.0f;
+					dest[destOffset + i + 1] = src.getShort(j) / 32768.0f;
+				}
+			}
+			for(; i<samples; i++, j+=2) {
+				dest[destOffset + i] = src.getShort(j) / 32768.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = ((src[j+1] << 8) | (src[j] & 0xFF)) / 32768.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = src.getShort(j) / 32768.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples) {
+			slice(src, srcOffset).asShortBuffer().get(dest, destOffset, samples); // same format, bulk copy
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=2) {
+				dest[destOffset + i] = src.getShort(j) << 16;
+			}
+		}
+	}
+
+	static final class Pcm24 extends SampleDecoder {
+		// high byte keeps the sign
+		Pcm24(boolean swapLR) { super(swapLR, 3); }
+
+		@Override
+		void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=6) {
+					dest[destOffset + i    ] = ((src[j+5] << 16) | ((src[j+4] & 0xFF) << 8) | (src[j+3] & 0xFF)) / 8388608.0f;
+					dest[destOffset + i + 1] = ((src[j+2] << 16) | ((src[j+1] & 0xFF) << 8) | (src[j] & 0xFF)) / 8388608.0f;
+				}
+			}
+			for(; i<samples; i++, j+=3) {
+				dest[destOffset + i] = ((src[j+2] << 16) | ((src[j+1] & 0xFF) << 8) | (src[j] & 0xFF)) / 8388608.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=6) {
+					dest[destOffset + i    ] = ((src.get(j+5) << 16) | ((src.get(j+4) & 0xFF) << 8) | (src.get(j+3) & 0xFF)) / 8388608.0f;
+					dest[destOffset + i + 1] = ((src.get(j+2) << 16) | ((src.get(j+1) & 0xFF) << 8) | (src.get(j) & 0xFF)) / 8388608.0f;
+				}
+			}
+			for(; i<samples; i++, j+=3) {
+				dest[destOffset + i] = ((src.get(j+2) << 16) | ((src.get(j+1) & 0xFF) << 8) | (src.get(j) & 0xFF)) / 8388608.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = ((src[j+2] << 16) | ((src[j+1] & 0xFF) << 8) | (src[j] & 0xFF)) / 8388608.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = ((src.get(j+2) << 16) | ((src.get(j+1) & 0xFF) << 8) | (src.get(j) & 0xFF)) / 8388608.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=3) {
+				dest[destOffset + i] = (short)((src.get(j+2) << 8) | (src.get(j+1) & 0xFF));
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=3) {
+				dest[destOffset + i] = (src.get(j+2) << 24) | ((src.get(j+1) & 0xFF) << 16) | ((src.get(j) & 0xFF) << 8);
+			}
+		}
+	}
+
+	static final class Pcm32 extends SampleDecoder {
+		Pcm32(boolean swapLR) { super(swapLR, 4); }
+
+		@Override
+		void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=8) {
+					dest[destOffset + i    ] = get32(src, j+4) / 2147483648.0f;
+					dest[destOffset + i + 1] = get32(src, j) / 2147483648.0f;
+				}
+			}
+			for(; i<samples; i++, j+=4) {
+				dest[destOffset + i] = get32(src, j) / 2147483648.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=8) {
+					dest[destOffset + i    ] = src.getInt(j+4) / 2147483648.0f;
+					dest[destOffset + i + 1] = src.getInt(j) / 2147483648.0f;
+				}
+			}
+			for(; i<samples; i++, j+=4) {
+				dest[destOffset + i] = src.getInt(j) / 2147483648.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = get32(src, j) / 2147483648.0f;
+			}
+		}
+
+		@Override
+		void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = src.getInt(j) / 2147483648.0f;
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=4) {
+				dest[destOffset + i] = src.getShort(j+2);
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples) {
+			slice(src, srcOffset).asIntBuffer().get(dest, destOffset, samples); // same format, bulk copy
+		}
+	}
+
+	static final class Float32 extends SampleDecoder {
+		// WAVE_FORMAT_IEEE_FLOAT
+		Float32(boolean swapLR) { super(swapLR, 4); }
+
+		@Override
+		void decode(byte[] src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=8) {
+					dest[destOffset + i    ] = Float.intBitsToFloat(get32(src, j+4));
+					dest[destOffset + i + 1] = Float.intBitsToFloat(get32(src, j));
+				}
+			}
+			for(; i<samples; i++, j+=4) {
+				dest[destOffset + i] = Float.intBitsToFloat(get32(src, j));
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, float[] dest, int destOffset, int samples) {
+			int i = 0;
+			int j = srcOffset;
+			if(swapLR) {
+				for(; i+1<samples; i+=2, j+=8) {
+					dest[destOffset + i    ] = src.getFloat(j+4);
+					dest[destOffset + i + 1] = src.getFloat(j);
+				}
+			}
+			for(; i<samples; i++, j+=4) {
+				dest[destOffset + i] = src.getFloat(j);
+			}
+		}
+
+		@Override
+		void decodeChannel(byte[] src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = Float.intBitsToFloat(get32(src, j));
+			}
+		}
+
+		@Override
+		void decodeChannel(ByteBuffer src, int srcOffset, int stride, float[] dest, int destOffset, int frames) {
+			for(int i=0, j=srcOffset; i<frames; i++, j+=stride) {
+				dest[destOffset + i] = src.getFloat(j);
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, short[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=4) {
+				dest[destOffset + i] = toShort(src.getFloat(j));
+			}
+		}
+
+		@Override
+		void decode(ByteBuffer src, int srcOffset, int[] dest, int destOffset, int samples) {
+			for(int i=0, j=srcOffset; i<samples; i++, j+=4) {
+				dest[destOffset + i] = (int)(src.getFloat(j) * 2147483648.0);
+			}
+		}
+
+		static private short toShort(float f) {
+			int s = Math.round(f * 32768);
+			if(s > Short.MAX_VALUE) { return Short.MAX_VALUE; }
+			if(s < Short.MIN_VALUE) { return Short.MIN_VALUE; }
+			return (short) s;
+		}
+	}
+}
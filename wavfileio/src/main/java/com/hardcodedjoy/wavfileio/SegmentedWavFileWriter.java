@@ -0,0 +1,248 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// records into consecutive files (segments), split by size and / or duration,
+// with no lost or duplicated frames
+// the next segment is created and opened (header written) ahead of time
+// and old segments are closed by a background thread -> switching does not stall write()
+
+public class SegmentedWavFileWriter {
+
+	public interface SegmentNamer {
+		File getFile(int segmentIndex);
+	}
+
+	private final SegmentNamer namer;
+	private final int sampleRate;
+	private final int numChannels;
+	private final int bitsPerSample;
+
+	private long maxSegmentBytes = 4294967295L; // 4GB - 1 Byte
+	private long maxSegmentMillis = Long.MAX_VALUE;
+	private int ditherType = Dither.TYPE_RECTANGULAR;
+
+	private ExecutorService executor; // from open() to close()
+
+	private WavFileWriter current;
+	private int currentIndex;
+	private long currentFrames;
+	private long maxFrames; // per segment
+	private Future<WavFileWriter> next; // being prepared
+
+	private int lateSwitchCount; // next segment was not ready in time
+	private boolean switchLate; // current segment is past maxFrames, waiting for next
+
+	// segment files: <name>_0001.wav, <name>_0002.wav, ... next to file
+	public SegmentedWavFileWriter(File file, int sampleRate, int numChannels, int bitsPerSample) {
+		this(getDefaultNamer(file), sampleRate, numChannels, bitsPerSample);
+	}
+
+	public SegmentedWavFileWriter(SegmentNamer namer, int sampleRate, int numChannels, int bitsPerSample) {
+		this.namer = namer;
+		this.sampleRate = sampleRate;
+		this.numChannels = numChannels;
+		this.bitsPerSample = bitsPerSample;
+	}
+
+	static private SegmentNamer getDefaultNamer(final File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		final String base = (dot > 0) ? name.substring(0, dot) : name;
+		final String ext = (dot > 0) ? name.substring(dot) : ".wav";
+		return new SegmentNamer() {
+			@Override
+			public File getFile(int segmentIndex) {
+				String index = String.valueOf(segmentIndex + 1);
+				while(index.length() < 4) { index = "0" + index; }
+				return new File(file.getParentFile(), base + "_" + index + ext);
+			}
+		};
+	}
+
+	// call before open():
+	synchronized public void setMaxSegmentBytes(long sizeInBytes) { maxSegmentBytes = sizeInBytes; }
+	synchronized public void setMaxSegmentMillis(long millis) { maxSegmentMillis = millis; }
+	synchronized public void setDither(int type) { ditherType = type; }
+
+	private WavFileWriter openSegment(int index) {
+		WavFileWriter writer = new WavFileWriter(namer.getFile(index), sampleRate, numChannels, bitsPerSample);
+		writer.setDither(ditherType);
+		if(!writer.open()) { return null; }
+		return writer;
+	}
+
+	private void prepareNext() {
+		final int index = currentIndex + 1;
+		next = executor.submit(new Callable<WavFileWriter>() {
+			@Override
+			public WavFileWriter call() { return openSegment(index); }
+		});
+	}
+
+	// can be called again after close() (new recording, segment index starts at 0)
+	synchronized public boolean open() {
+		currentIndex = 0;
+		currentFrames = 0;
+		lateSwitchCount = 0;
+		switchLate = false;
+		current = openSegment(0);
+		if(current == null) { return false; }
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SegmentedWavFileWriter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		int blockAlign = current.getNumChannels() * current.getBitsPerSample() / 8;
+		long headerSize = current.getFileSizeInBytes();
+		long framesBySize = (Math.min(maxSegmentBytes, 4294967295L) - headerSize) / blockAlign;
+		long framesByTime = (maxSegmentMillis == Long.MAX_VALUE)
+				? Long.MAX_VALUE : (maxSegmentMillis * sampleRate) / 1000;
+		maxFrames = Math.max(Math.min(framesBySize, framesByTime), 1);
+
+		prepareNext();
+		return true;
+	}
+
+	// returns number of samples written (less than len only if disk full / no next segment)
+	// len should be a multiple of numChannels
+	synchronized public int write(float[] samples, int offset, int len, boolean swapLR) {
+		if(current == null) { return 0; }
+
+		int written = 0;
+		int n;
+		int w;
+
+		while(written < len) {
+			n = len - written;
+			long samplesLeft = (maxFrames - currentFrames) * numChannels;
+			if(n > samplesLeft) { n = (int) Math.max(samplesLeft, 0); }
+
+			if(n > 0) {
+				w = current.write(samples, offset + written, n, swapLR);
+				currentFrames += w / numChannels;
+				written += w;
+				if(w < n && !current.isNeedNextFile()) { return written; } // disk full
+				if(w == n && written == len) { break; }
+			}
+
+			// segment full:
+			if(!next.isDone() && !current.isNeedNextFile()) {
+				// next not ready, current can still grow -> switch at next write()
+				if(!switchLate) { lateSwitchCount++; } // once per switch, not per write()
+				switchLate = true;
+				w = current.write(samples, offset + written, len - written, swapLR);
+				currentFrames += w / numChannels;
+				written += w;
+				if(!current.isNeedNextFile()) { break; }
+			}
+
+			if(!switchSegment()) { break; }
+		}
+
+		return written;
+	}
+
+	private boolean switchSegment() {
+		WavFileWriter nextWriter = null;
+		try {
+			nextWriter = next.get(); // only waits if current is at its 4GB limit
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+		}
+		if(nextWriter == null) {
+			nextWriter = openSegment(currentIndex + 1); // retry
+			if(nextWriter == null) { return false; }
+		}
+
+		final WavFileWriter old = current;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() { old.close(); }
+		});
+
+		current = nextWriter;
+		currentIndex++;
+		currentFrames = 0;
+		switchLate = false;
+		prepareNext();
+		return true;
+	}
+
+	synchronized public void close() {
+		if(current == null) { return; }
+		current.close();
+		current = null;
+
+		// prepared segment not used -> remove
+		// (not cancelled: a running prepare would leave its file open and on disk)
+		final Future<WavFileWriter> pending = next;
+		next = null;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					WavFileWriter unused = pending.get(); // done, single thread executor
+					if(unused == null) { return; } // open failed
+					unused.close();
+					//noinspection ResultOfMethodCallIgnored
+					unused.getFile().delete();
+				} catch (ExecutionException e) {
+					e.printStackTrace(System.err);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	synchronized public File getCurrentFile() { return current == null ? null : current.getFile(); }
+	synchronized public int getSegmentCount() { return currentIndex + 1; }
+	synchronized public int getLateSwitchCount() { return lateSwitchCount; }
+}
@@ -0,0 +1,260 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// edit without decoding: extract, split, trim, concatenate
+// data is moved as bytes with FileChannel.transferTo() (block aligned ranges),
+// only a new header is written -> as fast as a file copy, bit-exact
+// (output header: fmt + data, other chunks of the source are not copied)
+
+public class WavFileEditor {
+
+	static private final long MAX_32 = 0xFFFFFFFFL;
+
+	static private String formatErr = "WavFileEditor format ERR"; // not same format
+	static private String rangeErr = "WavFileEditor range ERR";
+
+	// source file, data size from file length if not closed properly
+	static private class Source {
+		private final FileInputStream fis;
+		private final FileChannel channel;
+		private final WavFileHeader header;
+		private final long frameCount;
+
+		Source(File file) throws Exception {
+			fis = new FileInputStream(file);
+			try {
+				channel = fis.getChannel();
+				header = WavFileHeader.fromInputStream(fis);
+				frameCount = WavFileRepair.inferDataSize(channel, header) / header.getBlockAlign();
+			} catch (Exception e) {
+				fis.close();
+				throw e;
+			}
+		}
+
+		void close() {
+			try {
+				fis.close();
+			} catch (Exception e) {
+				e.printStackTrace(System.err);
+			}
+		}
+	}
+
+	// frames [startFrame, startFrame + frameCount) of src -> dest
+	static public boolean extract(File src, File dest, long startFrame, long frameCount) {
+		Source source = null;
+		try {
+			source = new Source(src);
+			write(dest, new Source[] { source }, new long[] { startFrame }, new long[] { frameCount });
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		} finally {
+			if(source != null) { source.close(); }
+		}
+	}
+
+	// frames [0, frame) -> first, [frame, end) -> second
+	static public boolean split(File src, long frame, File first, File second) {
+		Source source = null;
+		try {
+			source = new Source(src);
+			write(first, new Source[] { source }, new long[] { 0 }, new long[] { frame });
+			write(second, new Source[] { source }, new long[] { frame },
+					new long[] { source.frameCount - frame });
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		} finally {
+			if(source != null) { source.close(); }
+		}
+	}
+
+	// all of srcs, one after the other -> dest (srcs must have the same format)
+	static public boolean concatenate(File[] srcs, File dest) {
+		Source[] sources = new Source[srcs.length];
+		long[] startFrames = new long[srcs.length];
+		long[] frameCounts = new long[srcs.length];
+		try {
+			for(int i=0; i<srcs.length; i++) {
+				sources[i] = new Source(srcs[i]);
+				frameCounts[i] = sources[i].frameCount;
+			}
+			write(dest, sources, startFrames, frameCounts);
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		} finally {
+			for(Source source : sources) {
+				if(source != null) { source.close(); }
+			}
+		}
+	}
+
+	// keeps only frames [startFrame, endFrame) of file
+	// (startFrame 0 and data is last chunk -> truncated in place, else rewritten via a temp file)
+	static public boolean trim(File file, long startFrame, long endFrame) {
+		if(startFrame == 0 && trimEnd(file, endFrame)) { return true; }
+
+		File tmp = new File(file.getPath() + ".tmp");
+		if(!extract(file, tmp, startFrame, endFrame - startFrame)) {
+			tmp.delete();
+			return false;
+		}
+		return replace(file, tmp);
+	}
+
+	// file <- tmp, the original is kept until the replacement is in place
+	// returns false (file unchanged, tmp deleted) if that was not possible
+	static private boolean replace(File file, File tmp) {
+		if(tmp.renameTo(file)) { return true; } // POSIX: replaces file in one step
+
+		// target not replaced by rename -> original to backup first, restored on failure:
+		File backup = new File(file.getPath() + ".bak");
+		if(!file.renameTo(backup)) {
+			System.err.println("WavFileEditor.trim() rename ERR: " + file);
+			tmp.delete();
+			return false;
+		}
+		if(!tmp.renameTo(file)) {
+			System.err.println("WavFileEditor.trim() rename ERR: " + tmp);
+			if(!backup.renameTo(file)) {
+				System.err.println("WavFileEditor.trim() restore ERR, original is: " + backup);
+			}
+			tmp.delete();
+			return false;
+		}
+		backup.delete();
+		return true;
+	}
+
+	// returns false if not possible in place (file unchanged)
+	static private boolean trimEnd(File file, long endFrame) {
+		Source source = null;
+		RandomAccessFile raf = null;
+		try {
+			source = new Source(file);
+			WavFileHeader header = source.header;
+			if(header.isRf64() || endFrame < 0 || endFrame > source.frameCount) { return false; }
+
+			long dataStart = header.getHeaderSize();
+			long dataSize = header.getSubchunk2Size();
+			if(dataStart + dataSize + (dataSize & 1) < source.channel.size()) {
+				return false; // other chunks after data
+			}
+			source.close();
+			source = null;
+
+			dataSize = endFrame * header.getBlockAlign();
+			raf = new RandomAccessFile(file, "rw");
+			FileChannel channel = raf.getChannel();
+			channel.truncate(dataStart + dataSize);
+			if((dataSize & 1) == 1) { channel.write(ByteBuffer.allocate(1), dataStart + dataSize); } // pad byte
+
+			write32(channel, dataStart - 8 + dataSize + (dataSize & 1), header.getRiffSizeOffset());
+			write32(channel, dataSize, header.getDataSizeOffset());
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		} finally {
+			if(source != null) { source.close(); }
+			if(raf != null) {
+				try {
+					raf.close();
+				} catch (Exception e) {
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+	}
+
+	static private void write32(FileChannel channel, long val, long position) throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(0, (int) val);
+		while(bb.hasRemaining()) { position += channel.write(bb, position); }
+	}
+
+	// header + frame ranges of sources -> dest
+	static private void write(File dest, Source[] sources, long[] startFrames, long[] frameCounts) throws Exception {
+		WavFileHeader format = sources[0].header;
+		int blockAlign = format.getBlockAlign();
+		long dataSize = 0;
+
+		for(int i=0; i<sources.length; i++) {
+			if(!sources[i].header.isSameFormat(format)) { throw new Exception(formatErr); }
+			if(startFrames[i] < 0 || frameCounts[i] < 0
+					|| startFrames[i] + frameCounts[i] > sources[i].frameCount) {
+				throw new Exception(rangeErr);
+			}
+			dataSize += frameCounts[i] * blockAlign;
+		}
+
+		WavFileHeader header = new WavFileHeader(format);
+		if(44 - 8 + dataSize > MAX_32) { header.setRf64Reserve(true); } // > 4GB -> RF64
+		header.setSubchunk2Size(dataSize);
+
+		FileOutputStream fos = new FileOutputStream(dest);
+		try {
+			FileChannel out = fos.getChannel();
+			ByteBuffer bb = ByteBuffer.wrap(header.toByteArray());
+			while(bb.hasRemaining()) { out.write(bb); }
+
+			long position;
+			long count;
+			long n;
+			for(int i=0; i<sources.length; i++) {
+				position = sources[i].header.getHeaderSize() + startFrames[i] * blockAlign;
+				count = frameCounts[i] * blockAlign;
+				while(count > 0) {
+					n = sources[i].channel.transferTo(position, count, out);
+					if(n <= 0) { throw new Exception(rangeErr); } // source shorter than expected
+					position += n;
+					count -= n;
+				}
+			}
+
+			if((dataSize & 1) == 1) { out.write(ByteBuffer.allocate(1)); } // pad byte
+		} finally {
+			fos.close();
+		}
+	}
+}
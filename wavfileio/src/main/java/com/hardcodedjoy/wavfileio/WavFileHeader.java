@@ -26,12 +26,42 @@ SOFTWARE.
 
 package com.hardcodedjoy.wavfileio;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class WavFileHeader {
 
+	// RIFF chunk, as found in the file
+	static public class Chunk {
+		private final String id;
+		private final long offset; // of the chunk id, in file
+		private final long size; // declared size of the chunk body
+
+		Chunk(String id, long offset, long size) {
+			this.id = id;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		public String getId() { return id; }
+		public long getOffset() { return offset; }
+		public long getSize() { return size; }
+		public long getBodyOffset() { return offset + 8; }
+
+		@Override
+		public String toString() { return "'" + id + "' @" + offset + " size " + size; }
+	}
+
+	static private final int PREAMBLE_SIZE = 20; // RIFF header + header of 1st chunk
+	static private final int MAX_FMT_SIZE = 40; // WAVE_FORMAT_EXTENSIBLE
+	static final int DS64_SIZE = 28; // without table
+	static private final long MAX_32 = 0xFFFFFFFFL; // size field value when size is in ds64
+
 	private int headerSize;
 	//private long chunkId;
 	private long chunkSize;
@@ -51,11 +81,19 @@ public class WavFileHeader {
 
 	private long durationMillis;
 
+	// RF64: a JUNK chunk is reserved after "WAVE", replaced by "ds64" if data > 4GB
+	private boolean rf64Reserve;
+	private boolean rf64; // parsed: RF64 / BW64 file
+
+	// chunks inside RIFF, up to and including "data" (only for parsed headers):
+	private final ArrayList<Chunk> chunks = new ArrayList<>();
+
 
 	static private String chunkIdErr = "WavHeader.fromFile() chunkId ERR";
 	static private String formatErr = "WavHeader.fromFile() format ERR";
 	static private String subchunk1IdErr = "WavHeader.fromFile() subchunk1Id ERR";
 	static private String subchunk2IdErr = "WavHeader.fromFile() subchunk2Id ERR";
+	static private String ds64Err = "WavHeader.fromFile() ds64 ERR";
 
 	public WavFileHeader(int sampleRate, int numChannels, int bitsPerSample) {
 		this.sampleRate = sampleRate;
@@ -75,21 +113,22 @@ public class WavFileHeader {
 		this.headerSize = 44; // default 44 Bytes
 	}
 
+	// new (empty) header with the same audio format as other
+	public WavFileHeader(WavFileHeader other) {
+		this((int) other.sampleRate, other.numChannels, other.bitsPerSample);
+		this.audioFormat = other.audioFormat;
+		this.blockAlign = other.blockAlign;
+		this.byteRate = other.byteRate;
+	}
 
-	static private long read32(InputStream is) throws IOException {
-		int a;
-		int b;
-		int c;
-		int d;
-
-		a = is.read() & 0xFF;
-		b = is.read() & 0xFF;
-		c = is.read() & 0xFF;
-		d = is.read() & 0xFF;
-
-		return (((long)d) << 24) + (c << 16) + (b << 8) + a;
+	// same sample rate, channels and sample format
+	public boolean isSameFormat(WavFileHeader other) {
+		return sampleRate == other.sampleRate && numChannels == other.numChannels
+				&& bitsPerSample == other.bitsPerSample && audioFormat == other.audioFormat
+				&& blockAlign == other.blockAlign;
 	}
 
+
 	static private void write32(long val, OutputStream os) throws IOException {
 		os.write( (int)( (val    ) & 0xFF ) );
 		os.write( (int)( (val>> 8) & 0xFF ) );
@@ -97,14 +136,9 @@ public class WavFileHeader {
 		os.write( (int)( (val>>24) & 0xFF ) );
 	}
 
-	static private int read16(InputStream is) throws IOException {
-		int a;
-		int b;
-
-		a = is.read() & 0xFF;
-		b = is.read() & 0xFF;
-
-		return (b << 8) + a;
+	static private void write64(long val, OutputStream os) throws IOException {
+		write32(val, os);
+		write32(val >>> 32, os);
 	}
 
 	static private void write16(long val, OutputStream os) throws IOException {
@@ -123,114 +157,176 @@ public class WavFileHeader {
 		return subchunk2Size;
 	}
 
+	// e.g. real size of a file that was not closed (see WavFileRepair)
+	public void setSubchunk2Size(long size) {
+		subchunk2Size = size;
+		updateDurationMillis();
+	}
 
-	static public WavFileHeader fromInputStream(InputStream is) throws Exception {
-		WavFileHeader wh = new WavFileHeader(0, 0, 0);
-
-		wh.headerSize = 0;
-
-		if(is.read()!='R') throw new Exception(chunkIdErr);
-		if(is.read()!='I') throw new Exception(chunkIdErr);
-		if(is.read()!='F') throw new Exception(chunkIdErr);
-		if(is.read()!='F') throw new Exception(chunkIdErr);
-		wh.headerSize += 4;
-
-		wh.chunkSize = read32(is);
-		wh.headerSize += 4;
-
-		//VBLog.log("chunkSize " + wh.chunkSize);
-
-		if(is.read()!='W') throw new Exception(formatErr);
-		if(is.read()!='A') throw new Exception(formatErr);
-		if(is.read()!='V') throw new Exception(formatErr);
-		if(is.read()!='E') throw new Exception(formatErr);
-		wh.headerSize += 4;
-
-		if(is.read()!='f') throw new Exception(subchunk1IdErr);
-		if(is.read()!='m') throw new Exception(subchunk1IdErr);
-		if(is.read()!='t') throw new Exception(subchunk1IdErr);
-		if(is.read()!=' ') throw new Exception(subchunk1IdErr);
-		wh.headerSize += 4;
-
-		wh.subchunk1Size = read32(is);
-		wh.headerSize += 4;
-
-		//VBLog.log("subchunk1Size " + wh.subchunk1Size);
-
-		wh.audioFormat = read16(is);
-		wh.headerSize += 2;
+	// before writing: reserve space for a ds64 chunk (header size 44 -> 80)
+	// so that data can grow past 4GB
+	public void setRf64Reserve(boolean reserve) {
+		rf64Reserve = reserve;
+		headerSize = reserve ? (12 + 8 + DS64_SIZE + 8 + (int)subchunk1Size + 8) : 44;
+	}
+	public boolean isRf64Reserve() { return rf64Reserve; }
 
-		//VBLog.log("audioFormat " + wh.audioFormat);
+	// data too big for a 32-bit RIFF size -> written as RF64
+	public boolean isRf64() {
+		return rf64 || (rf64Reserve && (headerSize - 8 + subchunk2Size) > MAX_32);
+	}
 
-		wh.numChannels = read16(is);
-		wh.headerSize += 2;
 
-		//VBLog.log("numChannels " + wh.numChannels);
+	static private void readFully(InputStream is, byte[] dest, int len, String err) throws Exception {
+		int n;
+		for(int i=0; i<len; i+=n) {
+			n = is.read(dest, i, len - i);
+			if(n == -1) { throw new Exception(err); }
+		}
+	}
 
-		wh.sampleRate = read32(is);
-		wh.headerSize += 4;
+	static private void skipFully(InputStream is, long n, String err) throws Exception {
+		long skipped;
+		while(n > 0) {
+			skipped = is.skip(n); // FileInputStream: lseek, no reading
+			if(skipped <= 0) {
+				// skip() may return 0 before end of stream:
+				if(is.read() == -1) { throw new Exception(err); }
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
 
-		//VBLog.log("sampleRate " + wh.sampleRate);
+	static private int get16(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i+1] & 0xFF) << 8);
+	}
 
-		wh.byteRate = read32(is);
-		wh.headerSize += 4;
+	static private long get32(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i+1] & 0xFF) << 8) | ((b[i+2] & 0xFF) << 16) | (((long)(b[i+3] & 0xFF)) << 24);
+	}
 
-		wh.blockAlign = read16(is);
-		wh.bitsPerSample = read16(is);
-		wh.headerSize += 4;
+	static private long get64(byte[] b, int i) {
+		return get32(b, i) | (get32(b, i+4) << 32);
+	}
 
-		//VBLog.log("bitsPerSample " + wh.bitsPerSample);
+	static private boolean isId(byte[] b, int i, String id) {
+		return b[i] == id.charAt(0) && b[i+1] == id.charAt(1) && b[i+2] == id.charAt(2) && b[i+3] == id.charAt(3);
+	}
 
-		int[] subchunk2Id = {'d', 'a', 't', 'a'};
-		int i = 0;
-		int c;
+	// RIFF chunk walker: reads the chunk headers and "fmt ",
+	// skips all other chunks by their size, stops at start of "data" samples
+	static public WavFileHeader fromInputStream(InputStream is) throws Exception {
+		WavFileHeader wh = new WavFileHeader(0, 0, 0);
 
-		while (true) {
-			c = is.read();
-			wh.headerSize++;
+		byte[] b = new byte[Math.max(PREAMBLE_SIZE, MAX_FMT_SIZE)];
+		readFully(is, b, PREAMBLE_SIZE, chunkIdErr);
 
-			if(c == -1) {
-				throw new Exception(subchunk2IdErr);
-			} else if(c == subchunk2Id[i]) {
-				i++;
+		if(isId(b, 0, "RF64") || isId(b, 0, "BW64")) {
+			wh.rf64 = true; // sizes in ds64
+		} else if(!isId(b, 0, "RIFF")) {
+			throw new Exception(chunkIdErr);
+		}
+		wh.chunkSize = get32(b, 4);
+		if(!isId(b, 8, "WAVE")) { throw new Exception(formatErr); }
+
+		long pos = 12; // position in stream, at chunk header
+		boolean fmtFound = false;
+		long ds64DataSize = -1;
+		String id;
+		long size;
+		int n;
+
+		while(true) {
+			if(pos == 12) {
+				System.arraycopy(b, 12, b, 0, 8); // 1st chunk header is in preamble
 			} else {
-				i = 0;
-				if(c == subchunk2Id[i]) {
-					i++;
-				}
+				readFully(is, b, 8, subchunk2IdErr);
 			}
-			if(i == subchunk2Id.length) {
-				break; // found "data"
+			id = new String(new char[] { (char)b[0], (char)b[1], (char)b[2], (char)b[3] });
+			size = get32(b, 4);
+			wh.chunks.add(new Chunk(id, pos, size));
+			pos += 8;
+
+			if(isId(b, 0, "data")) {
+				if(!fmtFound) { throw new Exception(subchunk1IdErr); }
+				wh.subchunk2Size = size;
+				if(size == MAX_32 && ds64DataSize != -1) {
+					wh.subchunk2Size = ds64DataSize;
+					wh.chunks.set(wh.chunks.size() - 1, new Chunk("data", pos - 8, ds64DataSize));
+				}
+				break;
 			}
-		}
 
-		//if(fis.read()!='d') throw new Exception(subchunk2IdErr);
-		//if(fis.read()!='a') throw new Exception(subchunk2IdErr);
-		//if(fis.read()!='t') throw new Exception(subchunk2IdErr);
-		//if(fis.read()!='a') throw new Exception(subchunk2IdErr);
+			if(isId(b, 0, "ds64") && wh.rf64) {
+				if(size < 24) { throw new Exception(ds64Err); }
+				readFully(is, b, 24, ds64Err);
+				skipFully(is, size - 24 + (size & 1), subchunk2IdErr); // table
+				wh.chunkSize = get64(b, 0);
+				ds64DataSize = get64(b, 8);
+				pos += size + (size & 1);
+				continue;
+			}
 
-		wh.subchunk2Size = read32(is);
-		wh.headerSize += 4;
+			if(isId(b, 0, "fmt ")) {
+				n = (int) Math.min(size, MAX_FMT_SIZE);
+				readFully(is, b, n, subchunk1IdErr);
+				skipFully(is, size - n + (size & 1), subchunk2IdErr);
+
+				wh.subchunk1Size = size;
+				wh.audioFormat = get16(b, 0);
+				wh.numChannels = get16(b, 2);
+				wh.sampleRate = get32(b, 4);
+				wh.byteRate = get32(b, 8);
+				wh.blockAlign = get16(b, 12);
+				wh.bitsPerSample = get16(b, 14);
+
+				// WAVE_FORMAT_EXTENSIBLE -> format from sub-format GUID:
+				if(wh.audioFormat == 0xFFFE && n >= 26) { wh.audioFormat = get16(b, 24); }
+				fmtFound = true;
+			} else {
+				skipFully(is, size + (size & 1), subchunk2IdErr); // odd size -> pad byte
+			}
+			pos += size + (size & 1);
+		}
 
-		//VBLog.log("subchunk2Size " + wh.subchunk2Size);
+		wh.headerSize = (int) pos;
 
 		wh.updateDurationMillis();
 
 		return wh;
 	}
 
+	public List<Chunk> getChunks() { return Collections.unmodifiableList(chunks); }
+
+	// returns null if not found
+	public Chunk getChunk(String id) {
+		for(Chunk chunk : chunks) {
+			if(chunk.getId().equals(id)) { return chunk; }
+		}
+		return null;
+	}
+
 
 	public void getHeader(OutputStream os) throws IOException {
 
-		chunkSize = 36 + subchunk2Size;
+		chunkSize = headerSize - 8 + subchunk2Size;
+		boolean rf64 = isRf64();
 
 		// chunkId:
-		os.write('R');
-		os.write('I');
-		os.write('F');
-		os.write('F');
-
-		write32(chunkSize, os);
+		if(rf64) {
+			os.write('R');
+			os.write('F');
+			os.write('6');
+			os.write('4');
+			write32(MAX_32, os); // size in ds64
+		} else {
+			os.write('R');
+			os.write('I');
+			os.write('F');
+			os.write('F');
+			write32(chunkSize, os);
+		}
 
 		// format:
 		os.write('W');
@@ -238,6 +334,27 @@ public class WavFileHeader {
 		os.write('V');
 		os.write('E');
 
+		if(rf64Reserve) {
+			if(rf64) {
+				os.write('d');
+				os.write('s');
+				os.write('6');
+				os.write('4');
+				write32(DS64_SIZE, os);
+				write64(chunkSize, os);
+				write64(subchunk2Size, os);
+				write64(subchunk2Size / blockAlign, os); // sample count
+				write32(0, os); // table length
+			} else {
+				os.write('J');
+				os.write('U');
+				os.write('N');
+				os.write('K');
+				write32(DS64_SIZE, os);
+				for(int i=0; i<DS64_SIZE; i++) { os.write(0); }
+			}
+		}
+
 		// subchunk1Id
 		os.write('f');
 		os.write('m');
@@ -259,7 +376,17 @@ public class WavFileHeader {
 		os.write('t');
 		os.write('a');
 
-		write32(subchunk2Size, os);
+		write32(rf64 ? MAX_32 : subchunk2Size, os);
+	}
+
+	public byte[] toByteArray() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(headerSize);
+		try {
+			getHeader(baos);
+		} catch (IOException e) {
+			// never for ByteArrayOutputStream
+		}
+		return baos.toByteArray();
 	}
 
 	private void updateDurationMillis() {
@@ -270,6 +397,11 @@ public class WavFileHeader {
 		//}
 	}
 
+	// for patching only the size fields of a written header:
+	public long getRiffSize() { return headerSize - 8 + subchunk2Size; }
+	public int getRiffSizeOffset() { return 4; }
+	public int getDataSizeOffset() { return headerSize - 4; }
+
 	public long getDurationMillis() { return durationMillis; }
 	public long getFileSizeInBytes() { return headerSize + subchunk2Size; }
 	public int getBitsPerSample() { return bitsPerSample; }
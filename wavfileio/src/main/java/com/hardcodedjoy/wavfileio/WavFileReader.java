@@ -28,11 +28,38 @@ package com.hardcodedjoy.wavfileio;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 public class WavFileReader {
 
+	// decode straight from a memory mapping of the data chunk
+	// (no read() syscall and no copy into byteBuffer, seek costs O(1)):
+	static public final int FLAG_MEMORY_MAPPED = 1;
+
+	// data size inferred from the file length if the header was not finalized
+	// (crash, power loss), the file itself is not changed (see WavFileRepair):
+	static public final int FLAG_RECOVER_LENGTH = 2;
+
+	static private final String bitsPerSampleErr = "WavFileReader unsupported bitsPerSample: ";
+	static private final String readFramesErr = "WavFileReader.readFrames() bad frameIndex, offset, frames: ";
+	static private final String planarErr = "WavFileReader.read() planar: ";
+
+	static private int defaultMaxBufferSize = 1024 * 1024; // 1MB
+
+	// readFrames() scratch, one per thread (no lock, no contention):
+	static private final int SCRATCH_SIZE = 256 * 1024; // 256KB
+	static private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(SCRATCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	};
+
 	private final File file;
 	private final FileInputStream fis;
+	private final FileChannel channel; // of fis, getChannel() is synchronized
 	private final WavFileHeader wavFileHeader;
 
 	private final int numChannels;
@@ -40,55 +67,102 @@ public class WavFileReader {
 	private final int bitsPerSample;
 	private final int wavAudioFormat;
 	private final int blockAlign;
+	private final long dataSize; // bytes, whole frames, max. up to end of file
 	private long durationMicros;
 
-	private long posSamplesMultiChannel;
+	private long dataPos; // read position, bytes, relative to data chunk start
+
+	private final MappedDataChunk mappedData; // null if not memory mapped
 
-	private final byte[] byteBuffer;
-	@SuppressWarnings("FieldCanBeLocal")
-	private int bbi;
-	@SuppressWarnings("FieldCanBeLocal")
-	private int sample;
-	private float fSample;
-	@SuppressWarnings("FieldCanBeLocal")
-	private int v;
-	@SuppressWarnings("FieldCanBeLocal")
-	private int i;
+	// borrowed from BufferPool on first read, sized by the requested len:
+	private byte[] byteBuffer;
+	private ByteBuffer byteBufferLE; // wraps byteBuffer, for integer read()
+	private int byteBufferSize; // usable part of byteBuffer, multiple of blockAlign
+	private int maxBufferSize;
+
+	private final SampleDecoder decoder;
+	private final SampleDecoder swapDecoder;
+
+	private DecodedBlockCache blockCache; // null = not used
+	private String blockCacheKey; // file identity
+	private volatile boolean closed;
 
 	public WavFileReader(File file) throws Exception {
+		this(file, 0);
+	}
+
+	public WavFileReader(File file, int flags) throws Exception {
 		this.file = file;
 		fis = new FileInputStream(file);
+		channel = fis.getChannel();
 		wavFileHeader = WavFileHeader.fromInputStream(fis);
+		if((flags & FLAG_RECOVER_LENGTH) != 0) {
+			wavFileHeader.setSubchunk2Size(WavFileRepair.inferDataSize(channel, wavFileHeader));
+		}
 		numChannels = wavFileHeader.getNumChannels();
 		sampleRate = wavFileHeader.getSampleRate();
 		bitsPerSample = wavFileHeader.getBitsPerSample();
 		wavAudioFormat = wavFileHeader.getAudioFormat();
 		blockAlign = wavFileHeader.getBlockAlign();
-		durationMicros = wavFileHeader.getDurationMillis()*1000;
 
-		byteBuffer = new byte[8000000]; // big enough
+		decoder = SampleDecoder.get(bitsPerSample, wavAudioFormat, false);
+		swapDecoder = SampleDecoder.get(bitsPerSample, wavAudioFormat, true);
+		if(decoder == null) {
+			fis.close();
+			throw new Exception(bitsPerSampleErr + bitsPerSample);
+		}
+
+		maxBufferSize = defaultMaxBufferSize;
+
+		long headerSize = wavFileHeader.getHeaderSize();
+		long size = Math.min(wavFileHeader.getSubchunk2Size(), channel.size() - headerSize);
+		dataSize = (Math.max(size, 0) / blockAlign) * blockAlign;
+		durationMicros = (getFrameCount() * 1000000) / sampleRate;
+
+		if((flags & FLAG_MEMORY_MAPPED) != 0) {
+			mappedData = new MappedDataChunk(channel, headerSize, dataSize, blockAlign);
+		} else {
+			mappedData = null;
+		}
+	}
+
+	// max. bytes buffered per read (bigger reads are done in multiple steps)
+	static public void setDefaultMaxBufferSize(int sizeInBytes) { defaultMaxBufferSize = sizeInBytes; }
+	synchronized public void setMaxBufferSize(int sizeInBytes) { maxBufferSize = sizeInBytes; }
+
+	private void ensureByteBuffer(int bytesNeeded) {
+		int size = Math.min(bytesNeeded, maxBufferSize);
+		size = Math.max((size / blockAlign) * blockAlign, blockAlign);
+
+		if(byteBuffer != null) {
+			if(byteBufferSize >= size) { return; } // big enough
+			BufferPool.release(byteBuffer);
+		}
+		byteBuffer = BufferPool.acquire(size);
+		byteBufferLE = ByteBuffer.wrap(byteBuffer).order(ByteOrder.LITTLE_ENDIAN);
+		byteBufferSize = size;
 	}
 
 	int fillByteBuffer(byte[] dest, int offset, int bytesToRead) {
-		int bytesRead;
+		int bytesRead = 0;
+		int n;
 
-        try {
-			bytesRead = fis.read(dest, offset, bytesToRead);
-        } catch (Exception e) {
-            e.printStackTrace(System.err);
-			bytesRead = -1;
-        }
-
-		if(bytesRead == -1) {
-			// end of stream
-            //VBLog.log("AFR Wav EOS");
-			posSamplesMultiChannel = ((durationMicros + 5000)/10000)*(sampleRate/100);
-			bytesRead = 0;
-		} else {
-			// actual samples read:
-            posSamplesMultiChannel += (bytesRead / (bitsPerSample/8) / numChannels);
+		// not past data chunk (pad byte, other chunks):
+		bytesToRead = (int) Math.min(bytesToRead, dataSize - dataPos);
+
+		try {
+			// FileInputStream.read() can return less than requested:
+			while(bytesRead < bytesToRead) {
+				n = fis.read(dest, offset + bytesRead, bytesToRead - bytesRead);
+				if(n == -1) { break; }
+				bytesRead += n;
+			}
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
 		}
 
+		dataPos += bytesRead;
+
         //VBLog.log("AFR Wav filed byte buffer with " + bytesRead + " bytes");
 		return bytesRead; // actual number
 	}
@@ -100,19 +174,32 @@ public class WavFileReader {
 		if(fis == null) { return posMicros; }
 		if(wavFileHeader == null) { return posMicros; }
 
+		// posMicros * sampleRate => max. 9,223,372,036,854,775,807
+		// for 44100 Hz -> posMicros max. 2.09 x 10^14 -> 209146758 seconds -> 6.6 years
+		long frame = onSeekFrame((posMicros*sampleRate) / 1000000);
+		return (frame * 1000000) / sampleRate;
+	}
+
+	// returns the frame set (limited to 0 ... frameCount)
+	private long onSeekFrame(long frame) {
+		frame = Math.max(Math.min(frame, getFrameCount()), 0);
 		try {
-			// posMicros * sampleRate => max. 9,223,372,036,854,775,807
-			// for 44100 Hz -> posMicros max. 2.09 x 10^14 -> 209146758 seconds -> 6.6 years
-			long n = ( (posMicros*sampleRate) / 1000000 ) * blockAlign;
-			fis.getChannel().position(wavFileHeader.getHeaderSize() + n);
-			posMicros = ( (n/blockAlign) * 1000000 ) / sampleRate;
+			if(mappedData == null) {
+				channel.position(wavFileHeader.getHeaderSize() + frame * blockAlign);
+			}
+			dataPos = frame * blockAlign;
 		} catch (Exception e) {
 			e.printStackTrace(System.err);
 		}
-		return posMicros;
+		return frame;
 	}
 
 	public void onClose() {
+		closed = true;
+		if(blockCache != null) { blockCache.release(blockCacheKey); }
+		if(mappedData != null) { mappedData.release(); }
+		BufferPool.release(byteBuffer);
+		byteBuffer = null;
 		try {
 			fis.close();
 		} catch(Exception e) {
@@ -121,108 +208,325 @@ public class WavFileReader {
 		durationMicros = 0;
 	}
 
+	// read(float[]) served from cache (decoded blocks shared with other readers of the same file)
+	// null = read from file
+	synchronized public void setBlockCache(DecodedBlockCache cache) {
+		if(blockCache != null) { blockCache.release(blockCacheKey); }
+		blockCache = cache;
+		blockCacheKey = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+	}
+
+	public File getFile() { return file; }
+	boolean isClosed() { return closed; }
+
+	public int getSampleRate() { return (int) sampleRate; }
+	public int getNumChannels() { return numChannels; }
+	public int getBitsPerSample() { return bitsPerSample; }
+
 	synchronized public long getDurationMicros() {
 		return durationMicros;
 	}
 	synchronized public long getPosMicros() {
-		if(posSamplesMultiChannel == Long.MAX_VALUE) { // value set by EOS
-			return durationMicros;
-		} else {
-			return (posSamplesMultiChannel * 1000000) / sampleRate; // works for max. len. of 6.6years @ 44100Hz
-		}
+		return (getFramePosition() * 1000000) / sampleRate; // works for max. len. of 6.6years @ 44100Hz
 	}
 	synchronized public void seek(long posMicros) {
-		// limit:
-		if(posMicros < 0) {
-			posMicros = 0;
-		} else if(posMicros > durationMicros) {
-			posMicros = durationMicros;
-		}
-		posMicros = onSeek(posMicros);
-		posSamplesMultiChannel = (posMicros * sampleRate) / 1000000; // works for max. len. of 6.6years @ 44100Hz
+		if(posMicros < 0) { posMicros = 0; }
+		onSeek(posMicros);
 	}
+
+	// sample-accurate position, in frames (1 frame = 1 sample of each channel)
+	public long getFrameCount() { return dataSize / blockAlign; }
+	synchronized public long getFramePosition() { return dataPos / blockAlign; }
+	synchronized public void seekFrame(long frame) { onSeekFrame(frame); }
 	synchronized public void close() {
 		onClose();
 	}
 
 	synchronized public int read(float[] dest, int offset, int len, boolean swapLR) {
 
+		SampleDecoder decoder = swapLR ? swapDecoder : this.decoder;
+
+		if(blockCache != null) { return readCached(dest, offset, len, swapLR); }
+		if(mappedData != null) { return readMapped(dest, offset, len, decoder); }
+
 		// len = number of floats -> single-channel samples
 		// convert to number of bytes:
-		int bytesToRead = len * (bitsPerSample/8);
-		int bytesRead = fillByteBuffer(byteBuffer, 0, bytesToRead);
-		int samplesRead = bytesRead / (bitsPerSample/8);
+		int bytesPerSample = bitsPerSample/8;
+		ensureByteBuffer(len * bytesPerSample);
+
+		// read and decode in steps of max. byteBufferSize:
+		int samplesPerStep = byteBufferSize / bytesPerSample;
+		int samplesRead = 0;
+		int samplesToRead;
+		int bytesToRead;
+		int bytesRead;
+
+		while(samplesRead < len) {
+			samplesToRead = Math.min(len - samplesRead, samplesPerStep);
+			bytesToRead = samplesToRead * bytesPerSample;
+			bytesRead = fillByteBuffer(byteBuffer, 0, bytesToRead);
+
+			decoder.decode(byteBuffer, 0, dest, offset + samplesRead, bytesRead / bytesPerSample);
+			samplesRead += bytesRead / bytesPerSample;
+
+			if(bytesRead < bytesToRead) { break; } // end of stream
+		}
+
+		return samplesRead;
+	}
+
+	private int readCached(float[] dest, int offset, int len, boolean swapLR) {
+		int bytesPerSample = bitsPerSample/8;
+		int blockSamples = blockCache.getBlockFrames() * numChannels;
+		long sample = dataPos / bytesPerSample;
+		len = (int) Math.min(len, dataSize / bytesPerSample - sample);
+
+		int samplesRead = 0;
+		float[] block;
+		int index;
+		int n;
+
+		while(samplesRead < len) {
+			block = blockCache.getBlock(this, blockCacheKey, sample / blockSamples);
+			index = (int)(sample % blockSamples);
+			n = Math.min(len - samplesRead, block.length - index);
+			if(n <= 0) { break; }
+
+			if(swapLR) {
+				// 1, 0, 3, 2, 5, 4, 7, 6, 9, ...
+				for(int i=0, v=(index & 1) == 0 ? 1 : -1; i<n; i++, v=-v) {
+					if(index + i + v < block.length) { dest[offset + samplesRead + i] = block[index + i + v]; }
+					else { dest[offset + samplesRead + i] = block[index + i]; } // odd last sample
+				}
+			} else {
+				System.arraycopy(block, index, dest, offset + samplesRead, n);
+			}
+			samplesRead += n;
+			sample += n;
+		}
 
-		// fill dest[] from byte[] buffer:
+		dataPos = sample * bytesPerSample;
+		if(mappedData == null) { // keep file position for reads without cache
+			try {
+				channel.position(wavFileHeader.getHeaderSize() + dataPos);
+			} catch (Exception e) {
+				e.printStackTrace(System.err);
+			}
+		}
+		return samplesRead;
+	}
 
-		// non-swap:
-		// 0, 1, 2, 3, 4, 5, 6, 7, 8, ...
-		//0, 0+1, 2, 2+1, 4, 4+1
-		// swap:
-		// 1, 0, 3, 2, 5, 4, 7, 6, 9, ...
-		//0+1, 0, 2+1, 2, 4+1, 4
+	// reads frames starting at frameIndex, independent of the read() position:
+	// not synchronized, positional reads -> many threads can read one file in parallel
+	// (note: interrupting a thread inside FileChannel.read() closes the file for all threads)
+	// returns number of frames read
+	public int readFrames(long frameIndex, float[] dest, int offset, int frames) {
+		if(frameIndex < 0 || offset < 0 || frames < 0
+				|| offset + (long) frames * numChannels > dest.length) {
+			throw new IllegalArgumentException(readFramesErr + frameIndex + ", " + offset + ", " + frames);
+		}
+		ByteBuffer bb = scratch.get();
+		int framesPerStep = bb.capacity() / blockAlign;
+		long framesLeft = Math.max(dataSize / blockAlign - frameIndex, 0);
+		frames = (int) Math.min(frames, framesLeft);
 
-		// i+1, i-1, i+1, i-1, ...
+		long position = wavFileHeader.getHeaderSize() + frameIndex * blockAlign;
+		int framesRead = 0;
+		int n;
 
-		v = 0; // index variance
-		if(swapLR) { v = 1; }
+		try {
+			while(framesRead < frames) {
+				n = Math.min(frames - framesRead, framesPerStep);
+				bb.clear().limit(n * blockAlign);
+				while(bb.hasRemaining()) {
+					if(channel.read(bb, position + bb.position()) == -1) { break; }
+				}
+				n = bb.position() / blockAlign;
+				if(n == 0) { break; } // file shorter than header says
 
-		for(i=0; i<samplesRead; i++, v=-v) {
+				decoder.decode(bb.array(), 0, dest, offset + framesRead * numChannels, n * numChannels);
+				framesRead += n;
+				position += (long)n * blockAlign;
+			}
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+		}
 
-			sample = 0;
+		return framesRead;
+	}
 
-			if(bitsPerSample==32) {
+	// 16-bit samples: 16-bit file -> copied as they are (bit-exact), else converted
+	synchronized public int read(short[] dest, int offset, int len) {
+		return readInteger(dest, null, offset, len);
+	}
 
-				bbi = i*4;
-				sample  = (sample     ) + (byteBuffer[bbi+3] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi+2] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi+1] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi  ] & 0xFF);
+	// 32-bit samples (full scale = full int range, like AudioFormat.ENCODING_PCM_32BIT):
+	// 32-bit PCM file -> copied as they are, 24 / 16 / 8-bit -> exact (lower bits 0), float -> converted
+	synchronized public int read(int[] dest, int offset, int len) {
+		return readInteger(null, dest, offset, len);
+	}
 
-				if(wavAudioFormat == 3) {
-					fSample = Float.intBitsToFloat(sample);
-				} else {
-					fSample = sample / 2147483648.0f;
+	// one of shortDest / intDest is used
+	private int readInteger(short[] shortDest, int[] intDest, int offset, int len) {
+		int bytesPerSample = bitsPerSample/8;
+		int samplesRead = 0;
+		int n;
+
+		if(mappedData != null) {
+			long bytesToRead = Math.min((long)len * bytesPerSample, dataSize - dataPos);
+			try {
+				while(bytesToRead > 0) {
+					ByteBuffer window = mappedData.getWindow(dataPos);
+					int index = (int)(dataPos - mappedData.getWindowStart(dataPos));
+					n = (int)(Math.min(bytesToRead, window.limit() - index) / bytesPerSample);
+					if(n == 0) { break; }
+
+					if(shortDest != null) { decoder.decode(window, index, shortDest, offset + samplesRead, n); }
+					else { decoder.decode(window, index, intDest, offset + samplesRead, n); }
+
+					samplesRead += n;
+					dataPos += (long)n * bytesPerSample;
+					bytesToRead -= (long)n * bytesPerSample;
 				}
+			} catch (Exception e) {
+				e.printStackTrace(System.err);
 			}
-			else if(bitsPerSample==24) {
+			return samplesRead;
+		}
+
+		ensureByteBuffer(len * bytesPerSample);
+
+		// read and decode in steps of max. byteBufferSize:
+		int samplesPerStep = byteBufferSize / bytesPerSample;
+		int samplesToRead;
+
+		while(samplesRead < len) {
+			samplesToRead = Math.min(len - samplesRead, samplesPerStep);
+			n = fillByteBuffer(byteBuffer, 0, samplesToRead * bytesPerSample) / bytesPerSample;
+
+			if(shortDest != null) { decoder.decode(byteBufferLE, 0, shortDest, offset + samplesRead, n); }
+			else { decoder.decode(byteBufferLE, 0, intDest, offset + samplesRead, n); }
+			samplesRead += n;
+
+			if(n < samplesToRead) { break; } // end of stream
+		}
+
+		return samplesRead;
+	}
+
+	// planar: dest[i][offset...] = channel channelMap[i] of the file
+	// (channelMap null -> dest[i] = channel i), other channels are not decoded
+	// returns number of frames read
+	synchronized public int read(float[][] dest, int offset, int frames, int[] channelMap) {
+		// dest must hold the frames that will be read (less at end of file):
+		checkPlanar(dest, offset, (int) Math.min(frames, (dataSize - dataPos) / blockAlign), channelMap);
+
+		if(mappedData != null) { return readMapped(dest, offset, frames, channelMap); }
 
-				bbi = i*3;
-				sample  = (sample     ) + (byteBuffer[bbi+2] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi+1] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi  ] & 0xFF);
+		ensureByteBuffer(frames * blockAlign);
 
-				// store sign bit:
-				sample  = sample << 8;
-				sample  = sample >> 8;
+		// read and decode in steps of max. byteBufferSize:
+		int framesPerStep = byteBufferSize / blockAlign;
+		int framesRead = 0;
+		int framesToRead;
+		int bytesToRead;
+		int n;
 
-				fSample = sample/8388608.0f;
+		while(framesRead < frames) {
+			framesToRead = Math.min(frames - framesRead, framesPerStep);
+			bytesToRead = framesToRead * blockAlign;
+			n = fillByteBuffer(byteBuffer, 0, bytesToRead) / blockAlign;
+
+			for(int i=0; i<dest.length; i++) {
+				decoder.decodeChannel(byteBuffer, getChannelOffset(channelMap, i), blockAlign,
+						dest[i], offset + framesRead, n);
 			}
-			else if(bitsPerSample==16) {
+			framesRead += n;
 
-				bbi = i*2;
-				sample  = (sample     ) + (byteBuffer[bbi+1] & 0xFF);
-				sample  = (sample << 8) + (byteBuffer[bbi  ] & 0xFF);
+			if(n < framesToRead) { break; } // end of stream
+		}
 
-				// store sign bit:
-				sample  = sample << 16;
-				sample  = sample >> 16;
+		return framesRead;
+	}
 
-				fSample = sample/32768.0f;
+	// before reading, so that a bad argument does not stop a read half way
+	private void checkPlanar(float[][] dest, int offset, int frames, int[] channelMap) {
+		if(offset < 0 || frames < 0) {
+			throw new IllegalArgumentException(planarErr + "offset " + offset + ", frames " + frames);
+		}
+		if(channelMap == null && dest.length > numChannels) {
+			throw new IllegalArgumentException(planarErr + dest.length + " dest arrays, file has " + numChannels + " channels");
+		}
+		if(channelMap != null && channelMap.length < dest.length) {
+			throw new IllegalArgumentException(planarErr + "channelMap shorter than dest");
+		}
+		for(int i=0; i<dest.length; i++) {
+			int channel = (channelMap == null) ? i : channelMap[i];
+			if(channel < 0 || channel >= numChannels) {
+				throw new IllegalArgumentException(planarErr + "channel " + channel + ", file has " + numChannels + " channels");
+			}
+			if(dest[i].length < (long) offset + frames) {
+				throw new IllegalArgumentException(planarErr + "dest[" + i + "] too short");
 			}
-			else if(bitsPerSample==8) {
+		}
+	}
+
+	private int getChannelOffset(int[] channelMap, int i) {
+		int channel = (channelMap == null) ? i : channelMap[i];
+		return channel * (bitsPerSample/8);
+	}
 
-				sample = (byteBuffer[i] & 0xFF);
-				// 8-bit is unsigned
+	private int readMapped(float[][] dest, int offset, int frames, int[] channelMap) {
 
-				fSample = (sample - 128) / 128.0f;
+		long bytesToRead = Math.min((long)frames * blockAlign, dataSize - dataPos);
+		int framesRead = 0;
+
+		try {
+			while(bytesToRead > 0) {
+				ByteBuffer window = mappedData.getWindow(dataPos);
+				int index = (int)(dataPos - mappedData.getWindowStart(dataPos));
+				int n = (int)(Math.min(bytesToRead, window.limit() - index) / blockAlign);
+				if(n == 0) { break; }
+
+				for(int i=0; i<dest.length; i++) {
+					decoder.decodeChannel(window, index + getChannelOffset(channelMap, i), blockAlign,
+							dest[i], offset + framesRead, n);
+				}
+
+				framesRead += n;
+				dataPos += (long)n * blockAlign;
+				bytesToRead -= (long)n * blockAlign;
 			}
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+		}
+
+		return framesRead;
+	}
+
+	private int readMapped(float[] dest, int offset, int len, SampleDecoder decoder) {
 
-			// log("dest index " + (offset + i + v) + " / " + dest.length);
+		int bytesPerSample = bitsPerSample/8;
+		long bytesToRead = Math.min((long)len * bytesPerSample, dataSize - dataPos);
+		int samplesRead = 0;
 
-			dest[offset + i + v] = fSample;
+		try {
+			while(bytesToRead > 0) {
+				ByteBuffer window = mappedData.getWindow(dataPos);
+				int index = (int)(dataPos - mappedData.getWindowStart(dataPos));
+				int samples = (int)(Math.min(bytesToRead, window.limit() - index) / bytesPerSample);
+				if(samples == 0) { break; }
+
+				decoder.decode(window, index, dest, offset + samplesRead, samples);
+
+				samplesRead += samples;
+				dataPos += (long)samples * bytesPerSample;
+				bytesToRead -= (long)samples * bytesPerSample;
+			}
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
 		}
 
 		return samplesRead;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// recovery of files that were not closed (crash, power loss):
+// the data size is inferred from the file length, and the header is fixed in place
+// by rewriting only the size fields (no data is copied)
+
+public class WavFileRepair {
+
+	static private final long MAX_32 = 0xFFFFFFFFL;
+
+	// returns the real data size, in bytes, aligned to blockAlign
+	static public long inferDataSize(FileChannel channel, WavFileHeader header) throws Exception {
+		long dataStart = header.getHeaderSize();
+		long available = Math.max(channel.size() - dataStart, 0);
+		long declared = header.getSubchunk2Size();
+		boolean streaming = (declared == MAX_32) && !header.isRf64(); // size unknown when written
+
+		if(declared > 0 && declared <= available && !streaming) {
+			long end = declared + (declared & 1); // pad byte
+			if(end >= available) { return declared; } // data is last chunk
+			// more bytes after data: another chunk, or a stale size
+			if(isChunkAt(channel, dataStart + end)) { return declared; }
+		}
+
+		int blockAlign = Math.max(header.getBlockAlign(), 1);
+		return (available / blockAlign) * blockAlign;
+	}
+
+	static private boolean isChunkAt(FileChannel channel, long position) throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		while(bb.hasRemaining()) {
+			if(channel.read(bb, position + bb.position()) == -1) { return false; }
+		}
+		for(int i=0; i<4; i++) {
+			byte c = bb.get(i);
+			if(c < 0x20 || c > 0x7E) { return false; } // chunk ids are ASCII
+		}
+		long size = bb.getInt(4) & MAX_32;
+		return position + 8 + size <= channel.size();
+	}
+
+	// fixes the header sizes in place if needed
+	// returns true if the file is OK after this call (fixed or nothing to fix)
+	static public boolean repair(File file) {
+		WavFileHeader header;
+		RandomAccessFile raf = null;
+
+		try {
+			FileInputStream fis = new FileInputStream(file);
+			try {
+				header = WavFileHeader.fromInputStream(fis);
+			} finally {
+				fis.close();
+			}
+
+			raf = new RandomAccessFile(file, "rw");
+			FileChannel channel = raf.getChannel();
+
+			long dataSize = inferDataSize(channel, header);
+			if(dataSize == header.getSubchunk2Size()) { return true; } // nothing to fix
+
+			WavFileHeader.Chunk data = header.getChunk("data");
+			long riffSize = header.getHeaderSize() - 8 + dataSize + (dataSize & 1);
+
+			WavFileHeader.Chunk ds64 = header.getChunk("ds64");
+			if(header.isRf64() && ds64 != null) {
+				long pos = ds64.getBodyOffset();
+				write64(channel, riffSize, pos);
+				write64(channel, dataSize, pos + 8);
+				write64(channel, dataSize / Math.max(header.getBlockAlign(), 1), pos + 16);
+				return true;
+			}
+
+			if(riffSize > MAX_32) { // does not fit a RIFF header
+				// JUNK reserved by WavFileWriter.setRf64Enabled() -> ds64, as at close():
+				WavFileHeader.Chunk junk = header.getChunk("JUNK");
+				if(junk == null || junk.getOffset() != 12 || junk.getSize() != WavFileHeader.DS64_SIZE) {
+					return false;
+				}
+				long pos = junk.getBodyOffset();
+				write64(channel, riffSize, pos);
+				write64(channel, dataSize, pos + 8);
+				write64(channel, dataSize / Math.max(header.getBlockAlign(), 1), pos + 16);
+				write32(channel, 0, pos + 24); // table length
+				writeId(channel, "ds64", junk.getOffset());
+				write32(channel, MAX_32, data.getOffset() + 4); // size in ds64
+				// last, file is RIFF with a "ds64" chunk (skipped) until here:
+				write32(channel, MAX_32, 4);
+				writeId(channel, "RF64", 0);
+				return true;
+			}
+
+			write32(channel, riffSize, header.getRiffSizeOffset());
+			write32(channel, dataSize, data.getOffset() + 4);
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		} finally {
+			if(raf != null) {
+				try {
+					raf.close();
+				} catch (Exception e) {
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+	}
+
+	static private void write32(FileChannel channel, long val, long position) throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(0, (int) val);
+		while(bb.hasRemaining()) { position += channel.write(bb, position); }
+	}
+
+	static private void writeId(FileChannel channel, String id, long position) throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(4);
+		for(int i=0; i<4; i++) { bb.put(i, (byte) id.charAt(i)); }
+		while(bb.hasRemaining()) { position += channel.write(bb, position); }
+	}
+
+	static private void write64(FileChannel channel, long val, long position) throws Exception {
+		ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putLong(0, val);
+		while(bb.hasRemaining()) { position += channel.write(bb, position); }
+	}
+}
@@ -0,0 +1,307 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// bit depth conversion of a whole file (e.g. 32-bit float master -> 24 / 16-bit),
+// pipelined: reader thread -> conversion workers -> writer (thread calling run()),
+// connected by bounded queues of recycled blocks -> disk and CPU busy at the same time
+// dither seeds are taken per block in file order -> same output for any number of workers
+
+public class WavFileTranscoder {
+
+	static private final int DEFAULT_BLOCK_FRAMES = 65536;
+	static private final long MAX_32 = 0xFFFFFFFFL;
+
+	static private String formatErr = "WavFileTranscoder format ERR";
+	static private String readErr = "WavFileTranscoder read ERR";
+	static private String writeErr = "WavFileTranscoder write ERR";
+
+	private final File src;
+	private final File dest;
+	private final int bitsPerSample;
+	private int ditherType = Dither.TYPE_RECTANGULAR; // as WavFileWriter -> same output
+	private Dither dither; // seeds of the blocks taken from it, null = new one (random seed)
+	private int numWorkers = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+	private int blockFrames = DEFAULT_BLOCK_FRAMES;
+
+	private final AtomicLong framesWritten = new AtomicLong();
+	private volatile long frameCount;
+	private volatile long startNanos;
+	private volatile long endNanos;
+	private volatile boolean cancelled;
+	private volatile Exception error;
+
+	// one step of the pipeline, recycled
+	static private class Block {
+		private final byte[] in; // source format
+		private final float[] samples;
+		private final byte[] out; // destination format
+		private int frames; // -1 = end marker
+		private long seed; // for dither
+		private boolean done; // converted
+
+		Block(int inSize, int numSamples, int outSize) {
+			in = new byte[inSize];
+			samples = new float[numSamples];
+			out = new byte[outSize];
+		}
+
+		synchronized void setDone() {
+			done = true;
+			notifyAll();
+		}
+
+		// returns false if not converted yet after max. millis
+		synchronized boolean waitDone(long millis) throws InterruptedException {
+			if(!done) { wait(millis); }
+			return done;
+		}
+	}
+
+	public WavFileTranscoder(File src, File dest, int bitsPerSample) {
+		this.src = src;
+		this.dest = dest;
+		this.bitsPerSample = bitsPerSample;
+	}
+
+	// used for bitsPerSample < 16 (16, 24, 32-bit are not dithered), type = Dither.TYPE_...
+	public void setDither(int type) {
+		ditherType = type;
+		dither = null;
+	}
+	// same type + seed -> same dest file
+	public void setDither(Dither dither) { this.dither = dither; }
+	public void setNumWorkers(int numWorkers) { this.numWorkers = Math.max(numWorkers, 1); }
+	public void setBlockFrames(int frames) { blockFrames = Math.max(frames, 1); }
+
+	// stops run() early (from another thread), dest is then incomplete
+	public void cancel() { cancelled = true; }
+
+	// converts all of src to dest, returns false on error or cancel()
+	public boolean run() {
+		FileInputStream fis = null;
+		WavFileWriter writer = null;
+		Thread readerThread = null;
+		Thread[] workers = new Thread[numWorkers];
+		framesWritten.set(0);
+		startNanos = System.nanoTime();
+		endNanos = 0;
+		error = null;
+
+		try {
+			fis = new FileInputStream(src);
+			final FileChannel channel = fis.getChannel();
+			final WavFileHeader header = WavFileHeader.fromInputStream(fis);
+			final SampleDecoder decoder = SampleDecoder.get(header.getBitsPerSample(), header.getAudioFormat(), false);
+			if(decoder == null) { throw new Exception(formatErr); }
+
+			int numChannels = header.getNumChannels();
+			int inBlockAlign = header.getBlockAlign();
+			int outBlockAlign = numChannels * FloatBufferToByteBuffer.getBytesPerSample(bitsPerSample);
+			frameCount = WavFileRepair.inferDataSize(channel, header) / inBlockAlign;
+
+			writer = new WavFileWriter(dest, (int) header.getSampleRate(), numChannels, bitsPerSample);
+			if(44 - 8 + frameCount * outBlockAlign > MAX_32) { writer.setRf64Enabled(true); }
+			if(!writer.open()) { throw new Exception(writeErr); }
+
+			// free -> reader -> (converting, in file order) -> writer -> free
+			int numBlocks = numWorkers * 2 + 2;
+			final ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<>(numBlocks);
+			final ArrayBlockingQueue<Block> toConvert = new ArrayBlockingQueue<>(numBlocks + numWorkers);
+			final ArrayBlockingQueue<Block> toWrite = new ArrayBlockingQueue<>(numBlocks + 1);
+			for(int i=0; i<numBlocks; i++) {
+				free.add(new Block(blockFrames * inBlockAlign, blockFrames * numChannels,
+						blockFrames * outBlockAlign));
+			}
+			final Block end = new Block(0, 0, 0);
+			end.frames = -1;
+
+			final Dither dither = (this.dither != null) ? this.dither : Dither.create(ditherType, numChannels);
+			final int numWorkers = workers.length;
+
+			readerThread = new Thread("WavFileTranscoder-read") {
+				@Override
+				public void run() {
+					try {
+						readLoop(channel, header, dither, free, toConvert, toWrite);
+					} catch (Exception e) {
+						fail(e);
+					}
+					// end markers, also after error -> no thread stays blocked:
+					toWrite.offer(end);
+					for(int i=0; i<numWorkers; i++) { toConvert.offer(end); }
+				}
+			};
+
+			final int numOutChannels = numChannels;
+			for(int i=0; i<numWorkers; i++) {
+				workers[i] = new Thread("WavFileTranscoder-convert-" + i) {
+					@Override
+					public void run() {
+						try {
+							convertLoop(decoder, numOutChannels, dither, toConvert);
+						} catch (Exception e) {
+							fail(e);
+						}
+					}
+				};
+			}
+
+			readerThread.start();
+			for(Thread worker : workers) { worker.start(); }
+
+			writeLoop(writer, outBlockAlign, free, toWrite);
+
+		} catch (Exception e) {
+			fail(e);
+		} finally {
+			if(readerThread != null) {
+				if(error != null) { readerThread.interrupt(); } // can wait for a free block
+				join(readerThread);
+			}
+			for(Thread worker : workers) {
+				if(worker != null) { join(worker); }
+			}
+			if(writer != null) { writer.close(); }
+			if(fis != null) {
+				try {
+					fis.close();
+				} catch (Exception e) {
+					e.printStackTrace(System.err);
+				}
+			}
+			endNanos = System.nanoTime();
+		}
+
+		return error == null && !cancelled;
+	}
+
+	private void readLoop(FileChannel channel, WavFileHeader header, Dither dither,
+						  ArrayBlockingQueue<Block> free, ArrayBlockingQueue<Block> toConvert,
+						  ArrayBlockingQueue<Block> toWrite) throws Exception {
+		int blockAlign = header.getBlockAlign();
+		long position = header.getHeaderSize();
+		long framesLeft = frameCount;
+		Block block;
+		ByteBuffer bb;
+
+		while(framesLeft > 0 && !cancelled && error == null) {
+			block = free.take();
+			block.frames = (int) Math.min(framesLeft, blockFrames);
+			block.seed = dither.nextSeed();
+			block.done = false;
+
+			bb = ByteBuffer.wrap(block.in, 0, block.frames * blockAlign);
+			while(bb.hasRemaining()) {
+				int n = channel.read(bb, position + bb.position());
+				if(n == -1) { throw new Exception(readErr); }
+			}
+			position += bb.position();
+			framesLeft -= block.frames;
+
+			toWrite.put(block); // file order
+			toConvert.put(block);
+		}
+	}
+
+	private void convertLoop(SampleDecoder decoder, int numChannels, Dither dither,
+							 ArrayBlockingQueue<Block> toConvert) throws Exception {
+		Block block;
+		int len;
+		while(true) {
+			block = toConvert.take();
+			if(block.frames == -1) { return; } // end marker
+
+			len = block.frames * numChannels;
+			decoder.decode(block.in, 0, block.samples, 0, len);
+			FloatBufferToByteBuffer.convert(block.samples, 0, len, false, bitsPerSample,
+					block.out, 0, dither.copy(block.seed));
+			block.setDone();
+		}
+	}
+
+	private void writeLoop(WavFileWriter writer, int blockAlign,
+						   ArrayBlockingQueue<Block> free, ArrayBlockingQueue<Block> toWrite) throws Exception {
+		Block block;
+		int len;
+		while(true) {
+			block = toWrite.take();
+			if(block.frames == -1) { return; } // end marker
+
+			while(!block.waitDone(100)) {
+				if(error != null) { return; } // worker failed
+			}
+			len = block.frames * blockAlign;
+			if(writer.write(block.out, len) < len) { throw new Exception(writeErr); }
+			framesWritten.addAndGet(block.frames);
+
+			free.put(block);
+		}
+	}
+
+	private void fail(Exception e) {
+		if(error == null) {
+			error = e;
+			e.printStackTrace(System.err);
+		}
+	}
+
+	static private void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getFrameCount() { return frameCount; }
+	public long getFramesWritten() { return framesWritten.get(); }
+	public Exception getError() { return error; }
+
+	// during run() or after
+	public long getElapsedNanos() {
+		long end = (endNanos != 0) ? endNanos : System.nanoTime();
+		return end - startNanos;
+	}
+
+	public double getFramesPerSecond() {
+		long nanos = getElapsedNanos();
+		return (nanos == 0) ? 0 : framesWritten.get() * 1e9 / nanos;
+	}
+
+	// e.g. 100 = 100x faster than real time
+	public double getRealtimeFactor(int sampleRate) {
+		return getFramesPerSecond() / sampleRate;
+	}
+}
@@ -28,22 +28,44 @@ package com.hardcodedjoy.wavfileio;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 public class WavFileWriter {
 
+	// checkpoint durability:
+	static public final int DURABILITY_NONE = 0; // sizes updated in OS cache only
+	static public final int DURABILITY_DATA = 1; // + FileChannel.force(false)
+	static public final int DURABILITY_FULL = 2; // + FileChannel.force(true), also file metadata
+
+	static private final String planarErr = "WavFileWriter.write() planar: ";
+
 	private long MAX_FILE_SIZE = 4294967295L; // 4GB - 1 Byte
+	static private final long MAX_FILE_SIZE_RF64 = Long.MAX_VALUE;
 	// static private final long MAX_FILE_SIZE = 20971520; // test (20MB)
 
 	private final File file;
 	private FileOutputStream fos;
+	private FileChannel channel;
+	private BlockWriter blockWriter; // small writes -> big blocks
+	private int writeBlockSize = BlockWriter.DEFAULT_BLOCK_SIZE;
 
 	private final WavFileHeader wavFileHeader;
 	private long fileSize;
 	private final int bitsPerSample;
 	private final int bytesPerSample;
 	private final int blockAlign;
-	private byte[] byteBuffer;
+	private byte[] byteBuffer; // from BufferPool
 	private boolean needNextFile;
+	private Dither dither; // own instance -> writers in parallel do not contend
+	private float[] floatBuffer; // scratch for planar / integer write()
+
+	// crash safety: header sizes are updated every checkpointInterval bytes
+	private long checkpointInterval; // 0 = only at close()
+	private int checkpointDurability;
+	private long lastCheckpointSize;
+	private final ByteBuffer sizeField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
 
 	public WavFileWriter(File file, int sampleRate, int numChannels, int bitsPerSample) {
 		this.file = file;
@@ -52,18 +74,23 @@ public class WavFileWriter {
 		this.bytesPerSample = this.bitsPerSample / 8;
 		this.blockAlign = wavFileHeader.getBlockAlign();
 		this.needNextFile = false;
+		this.dither = Dither.create(Dither.TYPE_RECTANGULAR, numChannels);
 	}
 
 	public boolean open() {
 
 		try {
 			fos = new FileOutputStream(file);
+			channel = fos.getChannel();
 
 			// delete old content (if any) from the output file:
-			fos.getChannel().truncate(0);
+			channel.truncate(0);
 
-			wavFileHeader.getHeader(fos);
+			writeFully(ByteBuffer.wrap(wavFileHeader.toByteArray()), 0);
+			channel.position(wavFileHeader.getHeaderSize());
+			blockWriter = new BlockWriter(channel, writeBlockSize);
 			fileSize = wavFileHeader.getHeaderSize();
+			lastCheckpointSize = fileSize;
 			return true; // success
 
 		} catch(Exception e) {
@@ -75,11 +102,78 @@ public class WavFileWriter {
 					e1.printStackTrace(System.err);
 				}
 				fos = null;
+				channel = null;
+			}
+			blockWriter = null;
+			return false;
+		}
+	}
+
+	private void writeFully(ByteBuffer bb, long position) throws Exception {
+		while(bb.hasRemaining()) {
+			position += channel.write(bb, position); // positional, file position not changed
+		}
+	}
+
+	// reserve space in the header for RF64, data can grow past 4GB in the same file
+	// (header stays a standard RIFF if the file stays < 4GB)
+	// call before open()
+	synchronized public void setRf64Enabled(boolean enabled) {
+		wavFileHeader.setRf64Reserve(enabled);
+		MAX_FILE_SIZE = enabled ? MAX_FILE_SIZE_RF64 : 4294967295L;
+	}
+
+	// update the header every intervalMillis of audio or every intervalBytes
+	// (whatever comes first, 0 = not used), so that a crash does not leave a file with 0 data
+	// durability = DURABILITY_...
+	synchronized public void setCheckpointPolicy(long intervalMillis, long intervalBytes, int durability) {
+		long byteRate = wavFileHeader.getSampleRate() * blockAlign;
+		long interval = Long.MAX_VALUE;
+		if(intervalMillis > 0) { interval = (intervalMillis * byteRate) / 1000; }
+		if(intervalBytes > 0) { interval = Math.min(interval, intervalBytes); }
+		checkpointInterval = (interval == Long.MAX_VALUE) ? 0 : Math.max(interval, 1);
+		checkpointDurability = durability;
+	}
+
+	// writes the collected data and the current sizes to file
+	// (only the size fields are rewritten, positional writes -> append position unchanged)
+	synchronized public boolean checkpoint() {
+		try {
+			try {
+				blockWriter.flush();
+			} finally {
+				updateSizes();
 			}
+
+			if(wavFileHeader.isRf64()) {
+				// sizes in ds64, small header -> rewrite all of it:
+				writeFully(ByteBuffer.wrap(wavFileHeader.toByteArray()), 0);
+			} else {
+				writeSizeField(wavFileHeader.getRiffSize(), wavFileHeader.getRiffSizeOffset());
+				writeSizeField(wavFileHeader.getSubchunk2Size(), wavFileHeader.getDataSizeOffset());
+			}
+
+			if(checkpointDurability == DURABILITY_DATA) { channel.force(false); }
+			if(checkpointDurability == DURABILITY_FULL) { channel.force(true); }
+
+			lastCheckpointSize = fileSize;
+			return true;
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
 			return false;
 		}
 	}
 
+	private void writeSizeField(long size, long position) throws Exception {
+		sizeField.clear();
+		sizeField.putInt(0, (int) size);
+		writeFully(sizeField, position);
+	}
+
+	// small writes are collected up to this size before being written to file
+	// (call before open())
+	synchronized public void setWriteBlockSize(int sizeInBytes) { writeBlockSize = sizeInBytes; }
+
 	public File getFile() { return file; }
 	public int getSampleRate() { return (int) wavFileHeader.getSampleRate(); }
 	public int getNumChannels() { return wavFileHeader.getNumChannels(); }
@@ -88,41 +182,184 @@ public class WavFileWriter {
 		return (int)((wavFileHeader.getSampleRate() * bitsPerSample) / 1024);
 	}
 
+	// used for bitsPerSample < 16, type = Dither.TYPE_...
+	synchronized public void setDither(int type) {
+		dither = Dither.create(type, wavFileHeader.getNumChannels());
+	}
+	synchronized public void setDither(Dither dither) { this.dither = dither; }
+	synchronized public Dither getDither() { return dither; }
+
 	// assuming len is even!!!
 	synchronized public int write(float[] samples, int offset, int len, boolean swapLR) {
 
+		len = getWritableLen(len);
+		if(len == 0) { return 0; } // nothing more to write to this file
+
 		int byteBufferLen = len * bytesPerSample;
+		ensureByteBuffer(byteBufferLen);
+		FloatBufferToByteBuffer.convertParallel(samples, offset, len, swapLR, bitsPerSample,
+				byteBuffer, 0, wavFileHeader.getNumChannels(), dither);
+
+		return writeBytes(byteBuffer, byteBufferLen) ? len : 0;
+	}
+
+	// 16-bit samples: copied as they are to a 16-bit file (bit-exact),
+	// other bitsPerSample -> converted as float
+	synchronized public int write(short[] samples, int offset, int len) {
+		if(bitsPerSample != 16) {
+			float[] f = getFloatBuffer(len);
+			for(int i=0; i<len; i++) { f[i] = samples[offset + i] / 32768.0f; }
+			return write(f, 0, len, false);
+		}
+
+		len = getWritableLen(len);
+		if(len == 0) { return 0; }
+
+		int byteBufferLen = len * 2;
+		ensureByteBuffer(byteBufferLen);
+		ByteBuffer.wrap(byteBuffer).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples, offset, len);
+
+		return writeBytes(byteBuffer, byteBufferLen) ? len : 0;
+	}
+
+	// 32-bit samples (full scale = full int range, like AudioFormat.ENCODING_PCM_32BIT):
+	// 24-bit file -> upper 24 bits copied (bit-exact for 24-bit data),
+	// other bitsPerSample -> converted as float
+	synchronized public int write(int[] samples, int offset, int len) {
+		if(bitsPerSample != 24) {
+			float[] f = getFloatBuffer(len);
+			for(int i=0; i<len; i++) { f[i] = (float)(samples[offset + i] / 2147483648.0); }
+			return write(f, 0, len, false);
+		}
+
+		len = getWritableLen(len);
+		if(len == 0) { return 0; }
+
+		int byteBufferLen = len * 3;
+		ensureByteBuffer(byteBufferLen);
+		int sample;
+		for(int i=offset, j=0; j<byteBufferLen; i++, j+=3) {
+			sample = samples[i];
+			byteBuffer[j    ] = (byte)(sample >>  8);
+			byteBuffer[j + 1] = (byte)(sample >> 16);
+			byteBuffer[j + 2] = (byte)(sample >> 24);
+		}
+
+		return writeBytes(byteBuffer, byteBufferLen) ? len : 0;
+	}
+
+	// already converted data (in the format of this file), len multiple of blockAlign
+	// returns number of bytes written
+	synchronized int write(byte[] bytes, int len) {
+		len = getWritableBytes(len);
+		if(len == 0) { return 0; } // nothing more to write to this file
+		return writeBytes(bytes, len) ? len : 0;
+	}
 
+	// number of samples (max. len) that still fit in this file
+	private int getWritableLen(int len) {
+		int byteBufferLen = len * bytesPerSample;
+		int writable = getWritableBytes(byteBufferLen);
+		return (writable == byteBufferLen) ? len : writable / bytesPerSample;
+	}
+
+	// number of bytes (max. len) that still fit in this file
+	private int getWritableBytes(int len) {
 		// if wanted to write more bytes than possible:
-		if(fileSize + byteBufferLen > MAX_FILE_SIZE) {
+		if(fileSize + len > MAX_FILE_SIZE) {
 			// maximum number of bytes that we can write to this file:
-			byteBufferLen = (int)(MAX_FILE_SIZE - fileSize);
+			len = (int)(MAX_FILE_SIZE - fileSize);
 
 			// align:
-			byteBufferLen /= blockAlign;
-			byteBufferLen *= blockAlign;
-
-			len = byteBufferLen / bytesPerSample;
+			len /= blockAlign;
+			len *= blockAlign;
 
 			needNextFile = true;
-			if(byteBufferLen == 0) {
-				return 0; // nothing more to write to this file
-			}
 		}
+		return len;
+	}
 
-		if(byteBuffer==null)                        { byteBuffer = new byte[byteBufferLen]; }
-		else if(byteBuffer.length != byteBufferLen) { byteBuffer = new byte[byteBufferLen]; }
-		FloatBufferToByteBuffer.convert(samples, offset, len, swapLR, bitsPerSample, byteBuffer);
+	private void ensureByteBuffer(int byteBufferLen) {
+		if(byteBuffer == null || byteBuffer.length < byteBufferLen) {
+			BufferPool.release(byteBuffer);
+			byteBuffer = BufferPool.acquire(byteBufferLen);
+		}
+	}
 
+	private float[] getFloatBuffer(int len) {
+		if(floatBuffer == null || floatBuffer.length < len) { floatBuffer = new float[len]; }
+		return floatBuffer;
+	}
+
+	// returns false if disk full
+	private boolean writeBytes(byte[] bytes, int len) {
 		try {
-			fos.write(byteBuffer);
-			wavFileHeader.addToSubchunk2Size(byteBufferLen);
-			fileSize += byteBufferLen;
-			return len; // samples written
+			blockWriter.write(bytes, 0, len);
+			updateSizes();
+			if(checkpointInterval > 0 && fileSize - lastCheckpointSize >= checkpointInterval) {
+				checkpoint();
+			}
+			return true;
 		} catch(Exception e) {
 			//e.printStackTrace();
+			updateSizes(); // without the bytes lost
 			needNextFile = false; // no point to make new file if disk full
-			return 0; // disk full
+			return false; // disk full
+		}
+	}
+
+	// sizes from the bytes really in file (or pending), not the ones lost in a failed write
+	private void updateSizes() {
+		long dataSize = blockWriter.getSize();
+		wavFileHeader.setSubchunk2Size(dataSize);
+		fileSize = wavFileHeader.getHeaderSize() + dataSize;
+	}
+
+	// bytes accepted by write() but not written to file (write failed, e.g. disk full)
+	synchronized public long getLostBytes() {
+		return (blockWriter == null) ? 0 : blockWriter.getLostBytes();
+	}
+
+	// planar: file channel c = samples[channelMap[c]][offset...]
+	// (channelMap null -> channel c = samples[c])
+	// returns number of frames written
+	synchronized public int write(float[][] samples, int offset, int frames, int[] channelMap) {
+		int numChannels = wavFileHeader.getNumChannels();
+		if(offset < 0 || frames < 0 || (channelMap != null && channelMap.length < numChannels)) {
+			throw new IllegalArgumentException(planarErr + "offset " + offset + ", frames " + frames);
+		}
+		int len = frames * numChannels;
+
+		int index;
+		for(int c=0; c<numChannels; c++) {
+			index = (channelMap == null) ? c : channelMap[c];
+			if(index < 0 || index >= samples.length || samples[index].length < (long) offset + frames) {
+				throw new IllegalArgumentException(planarErr + "no samples for channel " + c);
+			}
+		}
+
+		float[] interleaveBuffer = getFloatBuffer(len);
+		float[] src;
+		for(int c=0; c<numChannels; c++) {
+			src = samples[(channelMap == null) ? c : channelMap[c]];
+			for(int i=0, j=c; i<frames; i++, j+=numChannels) {
+				interleaveBuffer[j] = src[offset + i];
+			}
+		}
+
+		return write(interleaveBuffer, 0, len, false) / numChannels;
+	}
+
+	// writes the collected data to file
+	synchronized public boolean flush() {
+		if(blockWriter == null) { return false; } // not open
+		try {
+			blockWriter.flush();
+			return true;
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
+			updateSizes(); // without the bytes lost
+			return false;
 		}
 	}
 
@@ -135,17 +372,31 @@ public class WavFileWriter {
 	synchronized public long getFileSizeInBytes() { return wavFileHeader.getFileSizeInBytes(); }
 
 	synchronized public void close() {
+		if(blockWriter == null) { // not open / open() failed -> nothing to write
+			BufferPool.release(byteBuffer);
+			byteBuffer = null;
+			return;
+		}
 		try {
-			// write updated wav header to file:
+			blockWriter.flush();
+		} catch(Exception e) {
+			e.printStackTrace(System.err); // pending bytes lost, not counted in header
+		}
+		updateSizes();
 
-			fos.getChannel().position(0);
-			wavFileHeader.getHeader(fos);
-			//fos.flush();
+		try {
+			// write updated wav header to file:
+			writeFully(ByteBuffer.wrap(wavFileHeader.toByteArray()), 0);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+		try {
 			fos.close();
-
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		BufferPool.release(byteBuffer);
+		byteBuffer = null;
 	}
 
 	private void setMAX_FILE_SIZE(long sizeInBytes) { MAX_FILE_SIZE = sizeInBytes; } // for debug
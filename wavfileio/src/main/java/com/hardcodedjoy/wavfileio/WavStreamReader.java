@@ -0,0 +1,322 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+// reads wav data from any InputStream / ReadableByteChannel
+// (pipes, archive entries, content provider streams), no temp file needed
+// data is read ahead in big blocks and decoded with the same kernels as WavFileReader
+// seek: forward by skipping, backward only if the source is a file
+
+public class WavStreamReader {
+
+	static private final int DEFAULT_READ_AHEAD = 256 * 1024; // 256KB
+	static private final long MAX_32 = 0xFFFFFFFFL;
+	static private final long WAIT_NANOS = 1000000; // 1ms, non-blocking channel without data
+
+	private final InputStream is; // one of is / channel is used
+	private final ReadableByteChannel channel;
+	private final FileChannel fileChannel; // null if source can not seek backward
+
+	private final byte[] block; // read-ahead
+	private final ByteBuffer blockBuffer; // wraps block, for channel reads
+	private int blockPos;
+	private int blockLen;
+	private long blockStart; // stream position of block[0]
+	private boolean eos;
+
+	private final WavFileHeader wavFileHeader;
+	private final int numChannels;
+	private final long sampleRate;
+	private final int bytesPerSample;
+	private final int blockAlign;
+	private final long dataStart; // stream position
+	private final long dataSize; // Long.MAX_VALUE if unknown
+
+	private final SampleDecoder decoder;
+	private final SampleDecoder swapDecoder;
+
+	public WavStreamReader(InputStream is) throws Exception {
+		this(is, null, DEFAULT_READ_AHEAD);
+	}
+
+	public WavStreamReader(InputStream is, int readAheadBytes) throws Exception {
+		this(is, null, readAheadBytes);
+	}
+
+	public WavStreamReader(ReadableByteChannel channel) throws Exception {
+		this(null, channel, DEFAULT_READ_AHEAD);
+	}
+
+	public WavStreamReader(ReadableByteChannel channel, int readAheadBytes) throws Exception {
+		this(null, channel, readAheadBytes);
+	}
+
+	private WavStreamReader(InputStream is, ReadableByteChannel channel, int readAheadBytes) throws Exception {
+		this.is = is;
+		this.channel = channel;
+
+		FileChannel fc = null;
+		if(is instanceof FileInputStream) {
+			fc = ((FileInputStream) is).getChannel();
+		} else if(channel instanceof FileChannel) {
+			fc = (FileChannel) channel;
+		}
+		if(fc != null) {
+			try {
+				blockStart = fc.position();
+			} catch(Exception e) { // pipe, fifo: "Illegal seek"
+				fc = null; // -> not seekable
+			}
+		}
+		fileChannel = fc;
+
+		block = new byte[Math.max(readAheadBytes, 4096)];
+		blockBuffer = ByteBuffer.wrap(block);
+
+		// header is parsed from the read-ahead block too:
+		wavFileHeader = WavFileHeader.fromInputStream(new BlockInputStream());
+
+		numChannels = wavFileHeader.getNumChannels();
+		sampleRate = wavFileHeader.getSampleRate();
+		bytesPerSample = wavFileHeader.getBitsPerSample() / 8;
+		blockAlign = wavFileHeader.getBlockAlign();
+		dataStart = getPosition();
+
+		long size = wavFileHeader.getSubchunk2Size();
+		boolean unknown = (size == 0) || (size == MAX_32 && !wavFileHeader.isRf64()); // live stream
+		dataSize = unknown ? Long.MAX_VALUE : size;
+
+		decoder = SampleDecoder.get(wavFileHeader.getBitsPerSample(), wavFileHeader.getAudioFormat(), false);
+		swapDecoder = SampleDecoder.get(wavFileHeader.getBitsPerSample(), wavFileHeader.getAudioFormat(), true);
+		if(decoder == null) {
+			throw new Exception("WavStreamReader unsupported bitsPerSample: " + wavFileHeader.getBitsPerSample());
+		}
+	}
+
+	// position in source stream, of the next byte to be used
+	private long getPosition() { return blockStart + blockPos; }
+
+	// keeps unused bytes, reads as much as fits in the block
+	private void refill() throws IOException {
+		int remaining = blockLen - blockPos;
+		System.arraycopy(block, blockPos, block, 0, remaining);
+		blockStart += blockPos;
+		blockPos = 0;
+		blockLen = remaining;
+
+		int n;
+		while(blockLen < block.length && !eos) {
+			if(is != null) {
+				n = is.read(block, blockLen, block.length - blockLen);
+			} else {
+				blockBuffer.limit(block.length).position(blockLen);
+				n = channel.read(blockBuffer);
+			}
+			if(n == -1) { eos = true; break; }
+			blockLen += n;
+			if(n == 0 && is == null) { break; } // non-blocking channel, nothing now
+		}
+	}
+
+	// like refill(), but waits on a non-blocking channel until data or end of stream
+	private void refillWait() throws IOException {
+		refill();
+		while(blockPos == blockLen && !eos && !Thread.currentThread().isInterrupted()) {
+			LockSupport.parkNanos(WAIT_NANOS);
+			refill();
+		}
+	}
+
+	// skips n bytes of the source
+	private void skip(long n) throws IOException {
+		int inBlock = (int) Math.min(n, blockLen - blockPos);
+		blockPos += inBlock;
+		n -= inBlock;
+		if(n == 0) { return; }
+
+		// block used up -> skip in source:
+		blockStart += blockLen;
+		blockPos = 0;
+		blockLen = 0;
+
+		if(fileChannel != null) {
+			fileChannel.position(fileChannel.position() + n);
+			blockStart += n;
+			return;
+		}
+
+		long skipped;
+		while(n > 0 && !eos) {
+			skipped = (is != null) ? is.skip(n) : 0;
+			if(skipped <= 0) {
+				// skip() not supported / channel -> read and drop
+				refillWait();
+				skipped = Math.min(n, blockLen);
+				blockPos = (int) skipped;
+				if(blockLen == 0) { break; }
+			} else {
+				blockStart += skipped;
+			}
+			n -= skipped;
+		}
+	}
+
+	synchronized public int read(float[] dest, int offset, int len, boolean swapLR) {
+		SampleDecoder decoder = swapLR ? swapDecoder : this.decoder;
+
+		long dataLeft = dataSize - (getPosition() - dataStart);
+		long maxSamples = Math.min(len, dataLeft / bytesPerSample);
+
+		int samplesRead = 0;
+		int n;
+
+		try {
+			while(samplesRead < maxSamples) {
+				n = (blockLen - blockPos) / blockAlign * numChannels; // whole frames only
+				if(n == 0) {
+					if(eos) { break; }
+					refill();
+					if(blockLen - blockPos < blockAlign) {
+						if(eos) { break; }
+						// non-blocking channel, no data now:
+						if(samplesRead > 0 || Thread.currentThread().isInterrupted()) { break; }
+						LockSupport.parkNanos(WAIT_NANOS); // wait instead of spinning
+						continue;
+					}
+					n = (blockLen - blockPos) / blockAlign * numChannels;
+				}
+				n = (int) Math.min(n, maxSamples - samplesRead);
+
+				decoder.decode(block, blockPos, dest, offset + samplesRead, n);
+				blockPos += n * bytesPerSample;
+				samplesRead += n;
+			}
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+		}
+
+		return samplesRead;
+	}
+
+	// returns false if not possible (backward on a non-file source)
+	synchronized public boolean seek(long posMicros) {
+		if(posMicros < 0) { posMicros = 0; }
+		long target = ((posMicros * sampleRate) / 1000000) * blockAlign;
+		if(target > dataSize) { target = (dataSize / blockAlign) * blockAlign; }
+
+		long current = getPosition() - dataStart;
+
+		try {
+			if(target >= current) {
+				skip(target - current);
+				return true;
+			}
+
+			// backward:
+			if(target >= blockStart - dataStart) { // still in block
+				blockPos = (int)(dataStart + target - blockStart);
+				return true;
+			}
+			if(fileChannel == null) { return false; }
+
+			fileChannel.position(dataStart + target);
+			blockStart = dataStart + target;
+			blockPos = 0;
+			blockLen = 0;
+			eos = false;
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		}
+	}
+
+	synchronized public long getPosMicros() {
+		long frames = (getPosition() - dataStart) / blockAlign;
+		return (frames * 1000000) / sampleRate;
+	}
+
+	// 0 if unknown (live stream)
+	synchronized public long getDurationMicros() {
+		if(dataSize == Long.MAX_VALUE) { return 0; }
+		return wavFileHeader.getDurationMillis() * 1000;
+	}
+
+	public WavFileHeader getWavFileHeader() { return wavFileHeader; }
+	public int getNumChannels() { return numChannels; }
+	public long getSampleRate() { return sampleRate; }
+	public boolean canSeekBackward() { return fileChannel != null; }
+
+	synchronized public void close() {
+		try {
+			if(is != null) { is.close(); }
+			if(channel != null) { channel.close(); }
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+		}
+	}
+
+	// header parsing from the read-ahead block
+	private class BlockInputStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			if(blockPos == blockLen) {
+				refillWait();
+				if(blockPos == blockLen) { return -1; }
+			}
+			return block[blockPos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) { return 0; }
+			if(blockPos == blockLen) {
+				refillWait();
+				if(blockPos == blockLen) { return -1; }
+			}
+			int n = Math.min(len, blockLen - blockPos);
+			System.arraycopy(block, blockPos, b, off, n);
+			blockPos += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long start = getPosition();
+			WavStreamReader.this.skip(n);
+			return getPosition() - start;
+		}
+	}
+}
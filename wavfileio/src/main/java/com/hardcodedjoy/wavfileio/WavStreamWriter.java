@@ -0,0 +1,209 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// writes wav data to any OutputStream / WritableByteChannel (pipes, sockets, memory)
+// header sizes are written as 0xFFFFFFFF (unknown length, streaming)
+// if the sink is a file, the real sizes are written at close()
+
+public class WavStreamWriter {
+
+	static private final long MAX_32 = 0xFFFFFFFFL;
+
+	private final OutputStream os; // one of os / channel is given
+	private WritableByteChannel channel;
+	private FileChannel fileChannel; // null if the sink can not be patched
+	private long headerPosition; // in fileChannel
+	private BlockWriter blockWriter;
+	private int writeBlockSize = BlockWriter.DEFAULT_BLOCK_SIZE;
+
+	private final WavFileHeader wavFileHeader;
+	private final int bitsPerSample;
+	private final int bytesPerSample;
+	private byte[] byteBuffer; // from BufferPool
+	private Dither dither;
+
+	public WavStreamWriter(OutputStream os, int sampleRate, int numChannels, int bitsPerSample) {
+		this(os, null, sampleRate, numChannels, bitsPerSample);
+	}
+
+	public WavStreamWriter(WritableByteChannel channel, int sampleRate, int numChannels, int bitsPerSample) {
+		this(null, channel, sampleRate, numChannels, bitsPerSample);
+	}
+
+	private WavStreamWriter(OutputStream os, WritableByteChannel channel,
+							int sampleRate, int numChannels, int bitsPerSample) {
+		this.os = os;
+		this.channel = channel;
+		this.wavFileHeader = new WavFileHeader(sampleRate, numChannels, bitsPerSample);
+		this.bitsPerSample = bitsPerSample;
+		this.bytesPerSample = FloatBufferToByteBuffer.getBytesPerSample(bitsPerSample);
+		this.dither = Dither.create(Dither.TYPE_RECTANGULAR, numChannels);
+	}
+
+	// writes the header with unknown sizes
+	public boolean open() {
+		try {
+			if(os instanceof FileOutputStream) {
+				channel = ((FileOutputStream) os).getChannel();
+			} else if(os != null) {
+				channel = Channels.newChannel(os);
+			}
+			if(channel instanceof FileChannel) {
+				fileChannel = (FileChannel) channel;
+				try {
+					headerPosition = fileChannel.position();
+				} catch(Exception e) { // pipe, fifo: "Illegal seek"
+					fileChannel = null; // -> not patched at close()
+				}
+			}
+
+			blockWriter = new BlockWriter(channel, writeBlockSize);
+
+			byte[] header = wavFileHeader.toByteArray();
+			putSizeField(header, wavFileHeader.getRiffSizeOffset(), MAX_32);
+			putSizeField(header, wavFileHeader.getDataSizeOffset(), MAX_32);
+			blockWriter.write(header, 0, header.length);
+			return true; // success
+
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
+			return false;
+		}
+	}
+
+	static private void putSizeField(byte[] header, int offset, long size) {
+		header[offset] = (byte) size;
+		header[offset + 1] = (byte)(size >> 8);
+		header[offset + 2] = (byte)(size >> 16);
+		header[offset + 3] = (byte)(size >> 24);
+	}
+
+	// small writes are collected up to this size before being written to the sink
+	// (call before open())
+	synchronized public void setWriteBlockSize(int sizeInBytes) { writeBlockSize = sizeInBytes; }
+
+	public int getSampleRate() { return (int) wavFileHeader.getSampleRate(); }
+	public int getNumChannels() { return wavFileHeader.getNumChannels(); }
+	public int getBitsPerSample() { return bitsPerSample; }
+
+	// used for bitsPerSample < 16, type = Dither.TYPE_...
+	synchronized public void setDither(int type) {
+		dither = Dither.create(type, wavFileHeader.getNumChannels());
+	}
+	synchronized public void setDither(Dither dither) { this.dither = dither; }
+
+	synchronized public int write(float[] samples, int offset, int len, boolean swapLR) {
+		if(blockWriter == null) { return 0; } // not open
+
+		int byteBufferLen = len * bytesPerSample;
+
+		if(byteBuffer == null || byteBuffer.length < byteBufferLen) {
+			BufferPool.release(byteBuffer);
+			byteBuffer = BufferPool.acquire(byteBufferLen);
+		}
+		FloatBufferToByteBuffer.convertParallel(samples, offset, len, swapLR, bitsPerSample,
+				byteBuffer, 0, wavFileHeader.getNumChannels(), dither);
+
+		try {
+			blockWriter.write(byteBuffer, 0, byteBufferLen);
+			updateSize();
+			return len; // samples written
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
+			updateSize(); // without the bytes lost
+			return 0; // sink closed
+		}
+	}
+
+	// data size from the bytes really written (or pending), header is written through blockWriter too
+	private void updateSize() {
+		wavFileHeader.setSubchunk2Size(Math.max(blockWriter.getSize() - wavFileHeader.getHeaderSize(), 0));
+	}
+
+	// writes the collected data to the sink
+	synchronized public boolean flush() {
+		if(blockWriter == null) { return false; } // not open
+		try {
+			blockWriter.flush();
+			if(os != null) { os.flush(); }
+			return true;
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
+			updateSize(); // without the bytes lost
+			return false;
+		}
+	}
+
+	synchronized public long getDurationMicros() {
+		return wavFileHeader.getDurationMillis() * 1000;
+	}
+
+	synchronized public long getDataSizeInBytes() { return wavFileHeader.getSubchunk2Size(); }
+
+	synchronized public void close() {
+		boolean flushed = false;
+		try {
+			if(blockWriter != null) { // else open() failed
+				try {
+					blockWriter.flush();
+					flushed = true;
+				} finally {
+					updateSize();
+				}
+			}
+
+			// seekable sink, all data written -> real sizes (if they fit in 32 bits):
+			if(flushed && fileChannel != null && wavFileHeader.getRiffSize() <= MAX_32) {
+				ByteBuffer bb = ByteBuffer.wrap(wavFileHeader.toByteArray());
+				long position = headerPosition;
+				while(bb.hasRemaining()) {
+					position += fileChannel.write(bb, position); // positional
+				}
+			}
+		} catch(Exception e) {
+			e.printStackTrace(System.err);
+		} finally {
+			// also after a failed flush (broken pipe, disk full):
+			try {
+				if(os != null) { os.close(); }
+				else if(channel != null) { channel.close(); }
+			} catch(Exception e) {
+				e.printStackTrace(System.err);
+			}
+		}
+		BufferPool.release(byteBuffer);
+		byteBuffer = null;
+	}
+}
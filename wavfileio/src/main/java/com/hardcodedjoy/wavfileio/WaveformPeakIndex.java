@@ -0,0 +1,453 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// min / max / RMS per channel, at several zoom levels, for waveform drawing:
+// level 0: one bucket per BASE_BUCKET_FRAMES frames, each next level: 4x bigger buckets
+// built in one pass over the data, file regions in parallel
+// saved as a sidecar file (<name>.wav.peaks), valid while the wav file length and mtime are the same
+// values stored as 16 bit (-32767..32767 -> -1..1)
+
+public class WaveformPeakIndex {
+
+	static private final int BASE_BUCKET_FRAMES = 256;
+	static private final int LEVEL_FACTOR = 4;
+	static private final int LEAF_BUCKETS = 1024; // per parallel task
+	static private final int STEP_BUCKETS = 64; // read + decoded in one step
+	static private final int MAGIC = 0x4B495057; // "WPIK"
+	static private final int VERSION = 2; // 2: bucketFrames 64 bit
+	static private final String SIDECAR_EXT = ".peaks";
+
+	static private String formatErr = "WaveformPeakIndex.build() format ERR";
+
+	static private ForkJoinPool pool;
+
+	private final File wavFile;
+	private final long fileLength; // of the wav file when the index was built
+	private final long lastModified;
+	private final int numChannels;
+	private final int sampleRate;
+	private final long frameCount;
+	private final long[] bucketFrames; // per level (long: > 2^31 frames at coarse levels of long files)
+	private final int[] bucketCount;
+	private final short[][] min; // [level][bucket * numChannels + channel]
+	private final short[][] max;
+	private final short[][] rms;
+
+	private WaveformPeakIndex(File wavFile, long fileLength, long lastModified,
+							  int numChannels, int sampleRate, long frameCount, int numLevels) {
+		this.wavFile = wavFile;
+		this.fileLength = fileLength;
+		this.lastModified = lastModified;
+		this.numChannels = numChannels;
+		this.sampleRate = sampleRate;
+		this.frameCount = frameCount;
+		bucketFrames = new long[numLevels];
+		bucketCount = new int[numLevels];
+		min = new short[numLevels][];
+		max = new short[numLevels][];
+		rms = new short[numLevels][];
+	}
+
+	static public File getSidecarFile(File wavFile) {
+		return new File(wavFile.getPath() + SIDECAR_EXT);
+	}
+
+	// from the sidecar file if valid, else built and saved
+	static public WaveformPeakIndex open(File wavFile) throws Exception {
+		WaveformPeakIndex index = load(wavFile);
+		if(index != null) { return index; }
+		index = build(wavFile);
+		index.save(); // not saved (read only dir, ...) -> built again next time
+		return index;
+	}
+
+	static private int getNumLevels(long baseBuckets) {
+		int numLevels = 1;
+		while(baseBuckets > 1) {
+			baseBuckets = (baseBuckets + LEVEL_FACTOR - 1) / LEVEL_FACTOR;
+			numLevels++;
+		}
+		return numLevels;
+	}
+
+	static public WaveformPeakIndex build(File wavFile) throws Exception {
+		long lastModified = wavFile.lastModified();
+		FileInputStream fis = new FileInputStream(wavFile);
+		try {
+			FileChannel channel = fis.getChannel();
+			WavFileHeader header = WavFileHeader.fromInputStream(fis);
+			SampleDecoder decoder = SampleDecoder.get(header.getBitsPerSample(), header.getAudioFormat(), false);
+			if(decoder == null) { throw new Exception(formatErr); }
+
+			int numChannels = header.getNumChannels();
+			long frameCount = WavFileRepair.inferDataSize(channel, header) / header.getBlockAlign();
+			long baseBuckets = (frameCount + BASE_BUCKET_FRAMES - 1) / BASE_BUCKET_FRAMES;
+			int numLevels = getNumLevels(baseBuckets);
+
+			WaveformPeakIndex index = new WaveformPeakIndex(wavFile, channel.size(), lastModified,
+					numChannels, (int) header.getSampleRate(), frameCount, numLevels);
+
+			// level 0, file regions in parallel:
+			int n = (int) baseBuckets * numChannels;
+			float[] bMin = new float[n];
+			float[] bMax = new float[n];
+			double[] bSumSq = new double[n];
+			getPool().invoke(new RegionTask(channel, header, decoder, frameCount,
+					bMin, bMax, bSumSq, 0, (int) baseBuckets));
+			index.setLevel(0, BASE_BUCKET_FRAMES, (int) baseBuckets, bMin, bMax, bSumSq);
+
+			// other levels from the previous one:
+			long frames = BASE_BUCKET_FRAMES;
+			int count = (int) baseBuckets;
+			int b;
+			int c;
+			int src;
+			int dst;
+			for(int level=1; level<numLevels; level++) {
+				frames *= LEVEL_FACTOR;
+				count = (count + LEVEL_FACTOR - 1) / LEVEL_FACTOR;
+				float[] lMin = new float[count * numChannels];
+				float[] lMax = new float[count * numChannels];
+				double[] lSumSq = new double[count * numChannels];
+				for(dst=0; dst<lMin.length; dst++) {
+					lMin[dst] = Float.MAX_VALUE;
+					lMax[dst] = -Float.MAX_VALUE;
+				}
+				for(b=0; b<bMin.length / numChannels; b++) {
+					for(c=0; c<numChannels; c++) {
+						src = b * numChannels + c;
+						dst = (b / LEVEL_FACTOR) * numChannels + c;
+						if(bMin[src] < lMin[dst]) { lMin[dst] = bMin[src]; }
+						if(bMax[src] > lMax[dst]) { lMax[dst] = bMax[src]; }
+						lSumSq[dst] += bSumSq[src];
+					}
+				}
+				index.setLevel(level, frames, count, lMin, lMax, lSumSq);
+				bMin = lMin;
+				bMax = lMax;
+				bSumSq = lSumSq;
+			}
+			return index;
+		} finally {
+			fis.close();
+		}
+	}
+
+	private void setLevel(int level, long frames, int count, float[] lMin, float[] lMax, double[] sumSq) {
+		bucketFrames[level] = frames;
+		bucketCount[level] = count;
+		min[level] = new short[lMin.length];
+		max[level] = new short[lMin.length];
+		rms[level] = new short[lMin.length];
+		long bucketStart;
+		long n;
+		for(int i=0; i<lMin.length; i++) {
+			bucketStart = (long)(i / numChannels) * frames;
+			n = Math.max(Math.min(frames, frameCount - bucketStart), 1);
+			min[level][i] = toShort(lMin[i]);
+			max[level][i] = toShort(lMax[i]);
+			rms[level][i] = toShort((float) Math.sqrt(sumSq[i] / n));
+		}
+	}
+
+	static private short toShort(float f) {
+		if(f > 1) { f = 1; }
+		if(f < -1) { f = -1; }
+		return (short) Math.round(f * 32767);
+	}
+
+	static private synchronized ForkJoinPool getPool() {
+		if(pool == null) { pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors()); }
+		return pool;
+	}
+
+	// level 0 buckets [fromBucket, toBucket), positional reads -> one channel for all tasks
+	@SuppressWarnings("serial")
+	static private class RegionTask extends RecursiveAction {
+
+		private final FileChannel channel;
+		private final WavFileHeader header;
+		private final SampleDecoder decoder;
+		private final long frameCount;
+		private final float[] min;
+		private final float[] max;
+		private final double[] sumSq;
+		private final int fromBucket;
+		private final int toBucket;
+
+		RegionTask(FileChannel channel, WavFileHeader header, SampleDecoder decoder, long frameCount,
+				   float[] min, float[] max, double[] sumSq, int fromBucket, int toBucket) {
+			this.channel = channel;
+			this.header = header;
+			this.decoder = decoder;
+			this.frameCount = frameCount;
+			this.min = min;
+			this.max = max;
+			this.sumSq = sumSq;
+			this.fromBucket = fromBucket;
+			this.toBucket = toBucket;
+		}
+
+		@Override
+		protected void compute() {
+			if(toBucket - fromBucket > LEAF_BUCKETS) {
+				int mid = (fromBucket + toBucket) >>> 1;
+				invokeAll(
+						new RegionTask(channel, header, decoder, frameCount,
+								min, max, sumSq, fromBucket, mid),
+						new RegionTask(channel, header, decoder, frameCount,
+								min, max, sumSq, mid, toBucket));
+				return;
+			}
+
+			int numChannels = header.getNumChannels();
+			int blockAlign = header.getBlockAlign();
+			int stepFrames = STEP_BUCKETS * BASE_BUCKET_FRAMES;
+			byte[] bytes = BufferPool.acquire(stepFrames * blockAlign);
+			ByteBuffer bb = ByteBuffer.wrap(bytes);
+			float[] samples = new float[stepFrames * numChannels];
+
+			try {
+				for(int b=fromBucket; b<toBucket; b+=STEP_BUCKETS) {
+					long startFrame = (long) b * BASE_BUCKET_FRAMES;
+					int frames = (int) Math.min(
+							(long) Math.min(STEP_BUCKETS, toBucket - b) * BASE_BUCKET_FRAMES,
+							frameCount - startFrame);
+
+					bb.clear().limit(frames * blockAlign);
+					long position = header.getHeaderSize() + startFrame * blockAlign;
+					while(bb.hasRemaining()) {
+						if(channel.read(bb, position + bb.position()) == -1) { break; }
+					}
+					frames = bb.position() / blockAlign;
+					decoder.decode(bytes, 0, samples, 0, frames * numChannels);
+
+					addBuckets(samples, frames, b, numChannels);
+				}
+			} catch (Exception e) {
+				e.printStackTrace(System.err);
+			}
+			BufferPool.release(bytes);
+		}
+
+		private void addBuckets(float[] samples, int frames, int bucket, int numChannels) {
+			int i = 0;
+			for(int f=0; f<frames; f+=BASE_BUCKET_FRAMES, bucket++) {
+				int end = Math.min(f + BASE_BUCKET_FRAMES, frames) * numChannels;
+				for(int c=0; c<numChannels; c++) {
+					float lo = Float.MAX_VALUE;
+					float hi = -Float.MAX_VALUE;
+					double sq = 0;
+					float s;
+					for(i=f*numChannels+c; i<end; i+=numChannels) {
+						s = samples[i];
+						if(s < lo) { lo = s; }
+						if(s > hi) { hi = s; }
+						sq += s * s;
+					}
+					min[bucket * numChannels + c] = lo;
+					max[bucket * numChannels + c] = hi;
+					sumSq[bucket * numChannels + c] = sq;
+				}
+			}
+		}
+	}
+
+	// returns null if no sidecar file, or not valid for the wav file any more
+	static public WaveformPeakIndex load(File wavFile) {
+		File sidecar = getSidecarFile(wavFile);
+		if(!sidecar.exists()) { return null; }
+
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(sidecar);
+			FileChannel channel = fis.getChannel();
+			ByteBuffer bb = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while(bb.hasRemaining()) {
+				if(channel.read(bb) == -1) { return null; }
+			}
+			bb.flip();
+
+			if(bb.getInt() != MAGIC || bb.getInt() != VERSION) { return null; }
+			long fileLength = bb.getLong();
+			long lastModified = bb.getLong();
+			if(fileLength != wavFile.length() || lastModified != wavFile.lastModified()) {
+				return null; // wav file changed
+			}
+
+			int numChannels = bb.getInt();
+			int sampleRate = bb.getInt();
+			long frameCount = bb.getLong();
+			int numLevels = bb.getInt();
+
+			WaveformPeakIndex index = new WaveformPeakIndex(wavFile, fileLength, lastModified,
+					numChannels, sampleRate, frameCount, numLevels);
+			int n;
+			for(int level=0; level<numLevels; level++) {
+				index.bucketFrames[level] = bb.getLong();
+				index.bucketCount[level] = bb.getInt();
+				n = index.bucketCount[level] * numChannels;
+				index.min[level] = getShorts(bb, n);
+				index.max[level] = getShorts(bb, n);
+				index.rms[level] = getShorts(bb, n);
+			}
+			return index;
+
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			return null;
+		} finally {
+			if(fis != null) {
+				try {
+					fis.close();
+				} catch (Exception e) {
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+	}
+
+	static private short[] getShorts(ByteBuffer bb, int n) {
+		short[] s = new short[n];
+		bb.asShortBuffer().get(s); // bulk
+		bb.position(bb.position() + n * 2);
+		return s;
+	}
+
+	static private void putShorts(ByteBuffer bb, short[] s) {
+		bb.asShortBuffer().put(s);
+		bb.position(bb.position() + s.length * 2);
+	}
+
+	public boolean save() {
+		int size = 44;
+		for(int level=0; level<min.length; level++) { size += 12 + min[level].length * 6; }
+
+		ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(MAGIC).putInt(VERSION);
+		bb.putLong(fileLength).putLong(lastModified);
+		bb.putInt(numChannels).putInt(sampleRate).putLong(frameCount);
+		bb.putInt(min.length);
+		for(int level=0; level<min.length; level++) {
+			bb.putLong(bucketFrames[level]).putInt(bucketCount[level]);
+			putShorts(bb, min[level]);
+			putShorts(bb, max[level]);
+			putShorts(bb, rms[level]);
+		}
+		bb.flip();
+
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(getSidecarFile(wavFile));
+			FileChannel channel = fos.getChannel();
+			while(bb.hasRemaining()) { channel.write(bb); }
+			fos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.err);
+			if(fos != null) {
+				try {
+					fos.close();
+				} catch (Exception e1) {
+					e1.printStackTrace(System.err);
+				}
+			}
+			return false;
+		}
+	}
+
+	// fills pixels values of min / max / rms (rms can be null) for frames [startFrame, endFrame)
+	// of one channel, from the coarsest level with buckets not bigger than a pixel -> O(pixels)
+	// returns the number of pixels with data (the rest is 0)
+	public int getPeaks(int channel, long startFrame, long endFrame, int pixels,
+						float[] dMin, float[] dMax, float[] dRms) {
+		if(pixels <= 0 || endFrame <= startFrame) { return 0; }
+
+		double framesPerPixel = (double)(endFrame - startFrame) / pixels;
+		int level = 0;
+		while(level + 1 < bucketFrames.length && bucketFrames[level + 1] <= framesPerPixel) { level++; }
+
+		long frames = bucketFrames[level];
+		int count = bucketCount[level];
+		short[] lMin = min[level];
+		short[] lMax = max[level];
+		short[] lRms = rms[level];
+
+		int filled = 0;
+		long fromBucket;
+		long toBucket;
+		int lo;
+		int hi;
+		double sq;
+		int i;
+		for(int p=0; p<pixels; p++) {
+			fromBucket = (long)(startFrame + p * framesPerPixel) / frames;
+			toBucket = (long) Math.ceil((startFrame + (p + 1) * framesPerPixel) / frames);
+			toBucket = Math.min(Math.max(toBucket, fromBucket + 1), count);
+
+			if(fromBucket >= count) {
+				dMin[p] = 0;
+				dMax[p] = 0;
+				if(dRms != null) { dRms[p] = 0; }
+				continue;
+			}
+
+			lo = Short.MAX_VALUE;
+			hi = Short.MIN_VALUE;
+			sq = 0;
+			for(long b=fromBucket; b<toBucket; b++) {
+				i = (int) b * numChannels + channel;
+				if(lMin[i] < lo) { lo = lMin[i]; }
+				if(lMax[i] > hi) { hi = lMax[i]; }
+				sq += (double) lRms[i] * lRms[i];
+			}
+			dMin[p] = lo / 32767f;
+			dMax[p] = hi / 32767f;
+			if(dRms != null) { dRms[p] = (float)(Math.sqrt(sq / (toBucket - fromBucket)) / 32767); }
+			filled++;
+		}
+		return filled;
+	}
+
+	public File getWavFile() { return wavFile; }
+	public int getNumChannels() { return numChannels; }
+	public int getSampleRate() { return sampleRate; }
+	public long getFrameCount() { return frameCount; }
+	public int getNumLevels() { return bucketFrames.length; }
+	public long getBucketFrames(int level) { return bucketFrames[level]; }
+	public int getBucketCount(int level) { return bucketCount[level]; }
+}
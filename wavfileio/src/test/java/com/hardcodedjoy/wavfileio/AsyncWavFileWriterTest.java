@@ -0,0 +1,90 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class AsyncWavFileWriterTest {
+
+	static private final float DELTA = 2.0f / 32768; // writer scales by 32767, reader by 32768
+
+	static private float sample(long i) { return ((i % 200) - 100) / 128.0f; }
+
+	// ring big enough: all samples in file, in order
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = File.createTempFile("async", ".wav");
+		file.deleteOnExit();
+		AsyncWavFileWriter writer = new AsyncWavFileWriter(new WavFileWriter(file, 48000, 2, 16), 5000);
+		assertTrue(writer.open());
+
+		float[] block = new float[960]; // 10 ms
+		long written = 0;
+		for(int b=0; b<300; b++) {
+			for(int i=0; i<block.length; i++) { block[i] = sample(written + i); }
+			assertEquals(block.length, writer.write(block, 0, block.length, false));
+			written += block.length;
+		}
+		assertEquals(3000000, writer.getDurationMicros());
+		writer.close();
+		assertEquals(0, writer.getOverrunCount());
+
+		WavFileReader reader = new WavFileReader(file);
+		float[] samples = new float[(int) written];
+		assertEquals(samples.length, reader.read(samples, 0, samples.length, false));
+		reader.close();
+		for(int i=0; i<samples.length; i++) { assertEquals(sample(i), samples[i], DELTA); }
+		assertTrue(file.delete());
+	}
+
+	// tiny ring: samples are dropped, but accepted + dropped = given and the file has the accepted ones
+	@Test
+	public void testOverrunAccounting() throws Exception {
+		File file = File.createTempFile("async", ".wav");
+		file.deleteOnExit();
+		AsyncWavFileWriter writer = new AsyncWavFileWriter(new WavFileWriter(file, 48000, 2, 16), 1);
+		assertTrue(writer.open());
+
+		float[] block = new float[960];
+		long accepted = 0;
+		for(int b=0; b<1000; b++) { accepted += writer.write(block, 0, block.length, false); }
+		writer.close();
+
+		assertTrue(writer.getOverrunCount() > 0);
+		assertEquals(1000L * block.length, accepted + writer.getDroppedSamples());
+		assertEquals(0, accepted % 2); // whole frames only
+		WavFileReader reader = new WavFileReader(file);
+		assertEquals(accepted / 2, reader.getFrameCount());
+		reader.close();
+		assertTrue(file.delete());
+	}
+}
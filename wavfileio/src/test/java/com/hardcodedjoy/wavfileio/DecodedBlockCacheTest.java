@@ -0,0 +1,116 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class DecodedBlockCacheTest {
+
+	static private File createNoise(int frames) throws Exception {
+		File file = File.createTempFile("cache", ".wav");
+		file.deleteOnExit();
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[frames * 2];
+		Random random = new Random(1);
+		for(int i=0; i<samples.length; i++) { samples[i] = random.nextFloat() - 0.5f; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return file;
+	}
+
+	static private float[] readAll(File file, boolean swapLR) throws Exception {
+		WavFileReader reader = new WavFileReader(file);
+		float[] samples = new float[(int) reader.getFrameCount() * 2];
+		assertEquals(samples.length, reader.read(samples, 0, samples.length, swapLR));
+		reader.close();
+		return samples;
+	}
+
+	// random seeks + reads through the cache: same samples as without, memory budget kept
+	@Test
+	public void testCachedReadsSameAsUncached() throws Exception {
+		File file = createNoise(100000);
+		for(int swap=0; swap<2; swap++) {
+			float[] all = readAll(file, swap == 1);
+			DecodedBlockCache cache = new DecodedBlockCache(256 * 1024, 1000);
+			cache.setReadAhead(2);
+			WavFileReader reader = new WavFileReader(file);
+			reader.setBlockCache(cache);
+
+			Random random = new Random(2);
+			for(int i=0; i<300; i++) {
+				long frame = random.nextInt((int) reader.getFrameCount());
+				reader.seekFrame(frame);
+				float[] dest = new float[random.nextInt(3000) * 2];
+				int n = reader.read(dest, 0, dest.length, swap == 1);
+				int expected = (int) Math.min(dest.length, all.length - frame * 2);
+				assertEquals(expected, n);
+				for(int j=0; j<n; j++) { assertEquals(all[(int) frame * 2 + j], dest[j], 0); }
+				assertEquals(frame + n / 2, reader.getFramePosition());
+				assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+			}
+			assertTrue(cache.getHitCount() > 0);
+			reader.close();
+		}
+		assertTrue(file.delete());
+	}
+
+	// a failed read (closed reader) must not put silence in the cache for the file
+	@Test
+	public void testClosedReaderNotCached() throws Exception {
+		File file = createNoise(10000);
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		DecodedBlockCache cache = new DecodedBlockCache(1 << 20, 1000);
+
+		WavFileReader closed = new WavFileReader(file);
+		closed.setBlockCache(cache);
+		closed.close();
+		assertEquals(0, cache.getBlock(closed, key, 3).length);
+		assertEquals(0, cache.getUsedBytes());
+
+		WavFileReader reader = new WavFileReader(file);
+		reader.setBlockCache(cache);
+		reader.seekFrame(3000);
+		float[] dest = new float[2000];
+		assertEquals(dest.length, reader.read(dest, 0, dest.length, false));
+		reader.close();
+
+		float[] all = readAll(file, false);
+		float[] expected = new float[dest.length];
+		System.arraycopy(all, 6000, expected, 0, dest.length);
+		assertArrayEquals(expected, dest, 0);
+		assertTrue(file.delete());
+	}
+}
@@ -0,0 +1,138 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class PrefetchingWavFileReaderTest {
+
+	static private final float DELTA = 2.0f / 32768; // writer scales by 32767, reader by 32768
+	static private final int FRAMES = 96000; // 2 s
+	static private final int CHUNK = 960; // 10 ms, FRAMES * 2 is a multiple of it
+
+	static private float sample(long i) { return ((i % 200) - 100) / 128.0f; }
+
+	static private File createRamp() throws Exception {
+		File file = File.createTempFile("prefetch", ".wav");
+		file.deleteOnExit();
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[FRAMES * 2];
+		for(int i=0; i<samples.length; i++) { samples[i] = sample(i); }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return file;
+	}
+
+	static private void waitPrefetched(PrefetchingWavFileReader reader, int samples) throws Exception {
+		long end = System.currentTimeMillis() + 5000;
+		while(reader.getPrefetchedSamples() < samples) {
+			assertTrue("prefetch timeout", System.currentTimeMillis() < end);
+			Thread.sleep(1);
+		}
+	}
+
+	// reads only prefetched data: no underruns, same samples as in file, then end of stream
+	@Test
+	public void testReadAll() throws Exception {
+		File file = createRamp();
+		PrefetchingWavFileReader reader = new PrefetchingWavFileReader(new WavFileReader(file), 200);
+		reader.start();
+
+		float[] chunk = new float[CHUNK];
+		for(int pos=0; pos<FRAMES * 2; pos+=CHUNK) {
+			waitPrefetched(reader, CHUNK);
+			assertEquals(CHUNK, reader.read(chunk, 0, CHUNK, false));
+			for(int i=0; i<CHUNK; i++) { assertEquals(sample(pos + i), chunk[i], DELTA); }
+		}
+
+		long end = System.currentTimeMillis() + 5000;
+		while(!reader.isEndOfStream()) {
+			assertTrue(System.currentTimeMillis() < end);
+			Thread.sleep(1);
+		}
+		assertEquals(0, reader.read(chunk, 0, CHUNK, false));
+		assertEquals(0, reader.getUnderrunCount());
+		reader.close();
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void testSeek() throws Exception {
+		File file = createRamp();
+		PrefetchingWavFileReader reader = new PrefetchingWavFileReader(new WavFileReader(file), 200);
+		reader.start();
+		waitPrefetched(reader, CHUNK);
+
+		float[] chunk = new float[CHUNK];
+		for(long posMicros : new long[] { 1000000, 250000, 1990000 }) {
+			reader.seek(posMicros);
+			Thread.sleep(200); // seek done by the I/O thread
+			waitPrefetched(reader, CHUNK);
+			assertEquals(posMicros, reader.getPosMicros());
+			assertEquals(CHUNK, reader.read(chunk, 0, CHUNK, false));
+			long frame = posMicros * 48000 / 1000000;
+			for(int i=0; i<CHUNK; i++) { assertEquals(sample(frame * 2 + i), chunk[i], DELTA); }
+		}
+		reader.close();
+		assertTrue(file.delete());
+	}
+
+	// read() right after seek(): only silence or data from the new position, never from before
+	@Test
+	public void testReadAfterSeek() throws Exception {
+		File file = createRamp();
+		PrefetchingWavFileReader reader = new PrefetchingWavFileReader(new WavFileReader(file), 200);
+		reader.start();
+		waitPrefetched(reader, CHUNK);
+
+		Random random = new Random(1);
+		float[] chunk = new float[CHUNK];
+		long posMicros;
+		long frame;
+		for(int k=0; k<200; k++) {
+			posMicros = random.nextInt(1900) * 1000L;
+			frame = posMicros * 48000 / 1000000;
+			reader.seek(posMicros);
+			assertEquals(posMicros, reader.getPosMicros());
+			assertEquals(CHUNK, reader.read(chunk, 0, CHUNK, false));
+			for(int i=0; i<CHUNK; i++) {
+				if(chunk[i] == 0) { continue; } // not ready yet
+				assertEquals(sample(frame * 2 + i), chunk[i], DELTA);
+			}
+			if(k % 10 == 0) { Thread.sleep(2); } // sometimes let the seek complete
+		}
+		reader.close();
+		assertTrue(file.delete());
+	}
+}
@@ -0,0 +1,125 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class ResamplingWavFileReaderTest {
+
+	static private File createSine(int sampleRate, int frames) throws Exception {
+		File file = File.createTempFile("resample", ".wav");
+		file.deleteOnExit();
+		WavFileWriter writer = new WavFileWriter(file, sampleRate, 2, 32);
+		assertTrue(writer.open());
+		float[] samples = new float[frames * 2];
+		for(int i=0; i<frames; i++) {
+			samples[2*i] = (float)(0.5 * Math.sin(2 * Math.PI * 997 * i / sampleRate));
+			samples[2*i+1] = -samples[2*i];
+		}
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return file;
+	}
+
+	// reads until end of stream, returns frames read
+	static private long readAll(ResamplingWavFileReader reader, int step) {
+		float[] buffer = new float[step * 2];
+		long frames = 0;
+		int n;
+		while((n = reader.read(buffer, 0, buffer.length, false)) > 0) { frames += n / 2; }
+		return frames;
+	}
+
+	// lengths around the read block size: the filter tail at end of file
+	// did not always fit in the resampler buffer
+	@Test(timeout = 60000)
+	public void testLengthSweep() throws Exception {
+		int[][] rates = { {44100, 48000}, {48000, 44100}, {96000, 48000}, {22050, 48000} };
+		int[] lengths = { 0, 1, 100, 4000, 4033, 4095, 4096, 4097, 8186, 8192, 10000, 16288, 16338 };
+		for(int[] rate : rates) {
+			for(int length : lengths) {
+				File file = createSine(rate[0], length);
+				ResamplingWavFileReader reader = new ResamplingWavFileReader(new WavFileReader(file), rate[1]);
+				long expected = ((long) length * rate[1] + rate[0] - 1) / rate[0];
+				assertEquals(rate[0] + "->" + rate[1] + " length " + length, expected, readAll(reader, 1001));
+				reader.close();
+				assertTrue(file.delete());
+			}
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testLengthSweepSeek() throws Exception {
+		File file = createSine(44100, 8186);
+		for(long posMicros=0; posMicros<=200000; posMicros+=12345) {
+			ResamplingWavFileReader reader = new ResamplingWavFileReader(new WavFileReader(file), 48000);
+			reader.seek(posMicros);
+			long expected = (8186L * 48000 + 44099) / 44100 - posMicros * 48000 / 1000000;
+			assertEquals("seek " + posMicros, Math.max(expected, 0), readAll(reader, 4096));
+			reader.close();
+		}
+		assertTrue(file.delete());
+	}
+
+	// read 44.1kHz as 48kHz, write it back to 44.1kHz: same signal (away from the edges)
+	@Test(timeout = 60000)
+	public void testRoundTrip() throws Exception {
+		int frames = 44100;
+		File file = createSine(44100, frames);
+		File out = File.createTempFile("resample", ".wav");
+		out.deleteOnExit();
+
+		ResamplingWavFileReader reader = new ResamplingWavFileReader(new WavFileReader(file), 48000);
+		ResamplingWavFileWriter writer = new ResamplingWavFileWriter(new WavFileWriter(out, 44100, 2, 32), 48000);
+		assertTrue(writer.open());
+		float[] buffer = new float[1000 * 2];
+		int n;
+		while((n = reader.read(buffer, 0, buffer.length, false)) > 0) { writer.write(buffer, 0, n, false); }
+		reader.close();
+		writer.close();
+
+		WavFileReader check = new WavFileReader(out);
+		assertEquals(frames, check.getFrameCount());
+		float[] result = new float[frames * 2];
+		assertEquals(result.length, check.read(result, 0, result.length, false));
+		check.close();
+
+		double max = 0;
+		for(int i=500; i<frames-500; i++) {
+			double expected = 0.5 * Math.sin(2 * Math.PI * 997 * i / 44100);
+			max = Math.max(max, Math.abs(result[2*i] - expected));
+		}
+		assertTrue("max error " + max, max < 1e-3);
+		assertTrue(file.delete());
+		assertTrue(out.delete());
+	}
+}
@@ -0,0 +1,160 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SegmentedWavFileWriterTest {
+
+	static private File createDir() throws Exception {
+		File dir = File.createTempFile("segments", "");
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		return dir;
+	}
+
+	static private void deleteFiles(File dir) {
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File file : files) { assertTrue(file.delete()); }
+		}
+	}
+
+	// all frames, in order, no lost or duplicated frames
+	// segments at least 1000 frames (100 ms at 10kHz), more if the next one was not ready in time
+	static private void checkSegments(File dir, int frames) throws Exception {
+		int segments = dir.listFiles().length;
+		int frame = 0;
+		for(int s=0; s<segments; s++) {
+			WavFileReader reader = new WavFileReader(new File(dir, "rec_" + (s + 1) + ".wav"));
+			float[] samples = new float[(int) reader.getFrameCount()];
+			assertEquals(samples.length, reader.read(samples, 0, samples.length, false));
+			reader.close();
+			if(s < segments - 1) { assertTrue(samples.length >= 1000); }
+			for(float sample : samples) {
+				assertEquals(((frame % 200) - 100) / 128.0f, sample, 2.0f / 32768);
+				frame++;
+			}
+		}
+		assertEquals(frames, frame);
+	}
+
+	static private void record(SegmentedWavFileWriter writer, int frames) {
+		float[] samples = new float[100];
+		for(int frame=0; frame<frames; frame+=100) {
+			for(int i=0; i<100; i++) { samples[i] = (((frame + i) % 200) - 100) / 128.0f; }
+			assertEquals(100, writer.write(samples, 0, 100, false));
+		}
+	}
+
+	@Test
+	public void testSegmentsReopen() throws Exception {
+		final File dir = createDir();
+		SegmentedWavFileWriter writer = new SegmentedWavFileWriter(new SegmentedWavFileWriter.SegmentNamer() {
+			@Override
+			public File getFile(int segmentIndex) { return new File(dir, "rec_" + (segmentIndex + 1) + ".wav"); }
+		}, 10000, 1, 16);
+		writer.setMaxSegmentMillis(100);
+
+		for(int pass=0; pass<2; pass++) { // same writer again after close()
+			assertTrue(writer.open());
+			record(writer, 4500);
+			writer.close();
+			checkSegments(dir, 4500);
+			deleteFiles(dir);
+		}
+		assertTrue(dir.delete());
+	}
+
+	// next segment opened slowly: one late switch per segment, not one per write()
+	@Test
+	public void testLateSwitchCount() throws Exception {
+		final File dir = createDir();
+		SegmentedWavFileWriter writer = new SegmentedWavFileWriter(new SegmentedWavFileWriter.SegmentNamer() {
+			@Override
+			public File getFile(int segmentIndex) {
+				if(segmentIndex > 0) {
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new File(dir, "rec_" + (segmentIndex + 1) + ".wav");
+			}
+		}, 10000, 1, 16);
+		writer.setMaxSegmentMillis(100);
+
+		assertTrue(writer.open());
+		record(writer, 1500); // written at once, next segment not ready when the first is full
+		int late = writer.getLateSwitchCount();
+		writer.close();
+		assertEquals(1, late);
+		checkSegments(dir, 1500);
+		deleteFiles(dir);
+		assertTrue(dir.delete());
+	}
+
+	// close() while the next segment is being prepared: it is closed and deleted, not left on disk
+	@Test
+	public void testCloseWhilePreparing() throws Exception {
+		final File dir = createDir();
+		final AtomicInteger preparing = new AtomicInteger();
+		SegmentedWavFileWriter writer = new SegmentedWavFileWriter(new SegmentedWavFileWriter.SegmentNamer() {
+			@Override
+			public File getFile(int segmentIndex) {
+				if(segmentIndex > 0) {
+					preparing.incrementAndGet();
+					try {
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new File(dir, "rec_" + (segmentIndex + 1) + ".wav");
+			}
+		}, 10000, 1, 16);
+		writer.setMaxSegmentMillis(100);
+
+		for(int pass=0; pass<10; pass++) {
+			assertTrue(writer.open());
+			record(writer, 500);
+			while(preparing.get() <= pass) { Thread.sleep(1); } // close() while preparing
+			writer.close();
+			assertEquals(1, dir.listFiles().length);
+			checkSegments(dir, 500);
+			deleteFiles(dir);
+		}
+		assertTrue(dir.delete());
+	}
+}
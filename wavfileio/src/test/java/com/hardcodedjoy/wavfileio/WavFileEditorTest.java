@@ -0,0 +1,98 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class WavFileEditorTest {
+
+	static private float[] createRamp(File file, int frames) throws Exception {
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[frames * 2];
+		for(int i=0; i<samples.length; i++) { samples[i] = ((i % 200) - 100) / 128.0f; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return readAll(file); // as decoded
+	}
+
+	static private float[] readAll(File file) throws Exception {
+		WavFileReader reader = new WavFileReader(file);
+		float[] samples = new float[(int) reader.getFrameCount() * 2];
+		assertEquals(samples.length, reader.read(samples, 0, samples.length, false));
+		reader.close();
+		return samples;
+	}
+
+	static private float[] range(float[] samples, int startFrame, int endFrame) {
+		float[] result = new float[(endFrame - startFrame) * 2];
+		System.arraycopy(samples, startFrame * 2, result, 0, result.length);
+		return result;
+	}
+
+	@Test
+	public void testTrim() throws Exception {
+		File file = File.createTempFile("editor", ".wav");
+		file.deleteOnExit();
+
+		float[] all = createRamp(file, 10000);
+		assertTrue(WavFileEditor.trim(file, 0, 8000)); // end only, in place
+		assertArrayEquals(range(all, 0, 8000), readAll(file), 0);
+
+		assertTrue(WavFileEditor.trim(file, 1000, 5000)); // via temp file
+		assertArrayEquals(range(all, 1000, 5000), readAll(file), 0);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		assertFalse(new File(file.getPath() + ".bak").exists());
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void testSplitConcatenate() throws Exception {
+		File file = File.createTempFile("editor", ".wav");
+		File first = File.createTempFile("editor", ".wav");
+		File second = File.createTempFile("editor", ".wav");
+		File joined = File.createTempFile("editor", ".wav");
+		File[] files = { file, first, second, joined };
+		for(File f : files) { f.deleteOnExit(); }
+
+		float[] all = createRamp(file, 10000);
+		assertTrue(WavFileEditor.split(file, 3333, first, second));
+		assertArrayEquals(range(all, 0, 3333), readAll(first), 0);
+		assertArrayEquals(range(all, 3333, 10000), readAll(second), 0);
+
+		assertTrue(WavFileEditor.concatenate(new File[] { first, second }, joined));
+		assertArrayEquals(all, readAll(joined), 0);
+		for(File f : files) { assertTrue(f.delete()); }
+	}
+}
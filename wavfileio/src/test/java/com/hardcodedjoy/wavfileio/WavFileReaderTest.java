@@ -0,0 +1,150 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class WavFileReaderTest {
+
+	static private final float DELTA = 2.0f / 32768; // writer scales by 32767, reader by 32768
+
+	static private File createRamp(int frames, int bitsPerSample) throws Exception {
+		File file = File.createTempFile("reader", ".wav");
+		file.deleteOnExit();
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, bitsPerSample);
+		assertTrue(writer.open());
+		float[] samples = new float[frames * 2];
+		for(int i=0; i<samples.length; i++) { samples[i] = ((i % 200) - 100) / 128.0f; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return file;
+	}
+
+	// write -> read: same samples
+	@Test
+	public void testRoundTrip() throws Exception {
+		for(int bits : new int[] { 16, 24, 32 }) {
+			File file = createRamp(10000, bits);
+			WavFileReader reader = new WavFileReader(file);
+			assertEquals(10000, reader.getFrameCount());
+			float[] dest = new float[20000];
+			assertEquals(dest.length, reader.read(dest, 0, dest.length, false));
+			for(int i=0; i<dest.length; i++) { assertEquals(((i % 200) - 100) / 128.0f, dest[i], DELTA); }
+			assertEquals(0, reader.read(dest, 0, dest.length, false)); // end of file
+			reader.close();
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testReadFrames() throws Exception {
+		File file = createRamp(10000, 16);
+		WavFileReader reader = new WavFileReader(file);
+		float[] dest = new float[200];
+		assertEquals(100, reader.readFrames(1234, dest, 0, 100));
+		for(int i=0; i<200; i++) { assertEquals(((2468 + i) % 200 - 100) / 128.0f, dest[i], DELTA); }
+		assertEquals(0, reader.getFramePosition()); // read() position not moved
+		assertEquals(10, reader.readFrames(9990, dest, 0, 100)); // up to end of file
+		assertEquals(0, reader.readFrames(20000, dest, 0, 100));
+		reader.close();
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void testReadFramesBadArguments() throws Exception {
+		File file = createRamp(1000, 16);
+		WavFileReader reader = new WavFileReader(file);
+		float[] dest = new float[200];
+		long[][] args = { {-1, 0, 10}, {0, -2, 10}, {0, 0, -1}, {0, 0, 101}, {0, 2, 100} };
+		for(long[] a : args) {
+			try {
+				reader.readFrames(a[0], dest, (int) a[1], (int) a[2]);
+				fail("no exception for " + a[0] + ", " + a[1] + ", " + a[2]);
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+		}
+		reader.close();
+		assertTrue(file.delete());
+	}
+
+	// planar, channels swapped by channelMap: same as interleaved
+	@Test
+	public void testPlanar() throws Exception {
+		for(int flags : new int[] { 0, WavFileReader.FLAG_MEMORY_MAPPED }) {
+			File file = createRamp(5000, 24);
+			WavFileReader reader = new WavFileReader(file, flags);
+			float[][] dest = new float[2][5000];
+			assertEquals(5000, reader.read(dest, 0, 5000, new int[] { 1, 0 }));
+			reader.close();
+
+			reader = new WavFileReader(file);
+			float[] interleaved = new float[10000];
+			reader.read(interleaved, 0, interleaved.length, false);
+			reader.close();
+			for(int i=0; i<5000; i++) {
+				assertEquals(interleaved[2*i+1], dest[0][i], 0);
+				assertEquals(interleaved[2*i], dest[1][i], 0);
+			}
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testPlanarBadArguments() throws Exception {
+		File file = createRamp(1000, 16);
+		WavFileReader reader = new WavFileReader(file);
+		Object[][] args = {
+				{ new float[3][100], null }, // more dest arrays than channels
+				{ new float[2][100], new int[] { 0, 2 } }, // no channel 2
+				{ new float[2][100], new int[] { -1, 0 } },
+				{ new float[2][100], new int[] { 0 } }, // map shorter than dest
+				{ new float[][] { new float[100], new float[50] }, null }, // dest[1] too short
+		};
+		for(Object[] a : args) {
+			try {
+				reader.read((float[][]) a[0], 0, 100, (int[]) a[1]);
+				fail("no exception");
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+			assertEquals(0, reader.getFramePosition()); // nothing read
+		}
+
+		// dest only needs room for the frames left in the file:
+		reader.seekFrame(950);
+		assertEquals(50, reader.read(new float[2][50], 0, 100, null));
+		reader.close();
+		assertTrue(file.delete());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Random;
+
+public class WavFileTranscoderTest {
+
+	static private final int FRAMES = 100000;
+
+	static private File createTempFile() throws Exception {
+		File file = File.createTempFile("transcode", ".wav");
+		file.deleteOnExit();
+		return file;
+	}
+
+	static private float[] createNoise(File file) throws Exception {
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 32);
+		assertTrue(writer.open());
+		float[] samples = new float[FRAMES * 2];
+		Random random = new Random(1);
+		for(int i=0; i<samples.length; i++) { samples[i] = random.nextFloat() - 0.5f; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return samples;
+	}
+
+	static private byte[] readBytes(File file) throws Exception {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream fis = new FileInputStream(file);
+		int n;
+		for(int i=0; i<bytes.length; i+=n) {
+			n = fis.read(bytes, i, bytes.length - i);
+			assertTrue(n > 0);
+		}
+		fis.close();
+		return bytes;
+	}
+
+	static private File transcode(File src, int bitsPerSample, int workers, Dither dither) throws Exception {
+		File dest = createTempFile();
+		WavFileTranscoder transcoder = new WavFileTranscoder(src, dest, bitsPerSample);
+		transcoder.setNumWorkers(workers);
+		transcoder.setBlockFrames(1000); // many blocks in the pipeline
+		transcoder.setDither(dither);
+		assertTrue(transcoder.run());
+		assertEquals(FRAMES, transcoder.getFramesWritten());
+		return dest;
+	}
+
+	// same file as WavFileWriter writes from the same samples, for any number of workers
+	@Test
+	public void testSameAsWriter() throws Exception {
+		File src = createTempFile();
+		float[] samples = createNoise(src);
+
+		File expected = createTempFile();
+		WavFileWriter writer = new WavFileWriter(expected, 48000, 2, 24);
+		assertTrue(writer.open());
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+
+		for(int workers=1; workers<=4; workers++) {
+			File dest = transcode(src, 24, workers, Dither.create(Dither.TYPE_RECTANGULAR, 2));
+			assertArrayEquals(readBytes(expected), readBytes(dest));
+			assertTrue(dest.delete());
+		}
+		assertTrue(expected.delete());
+		assertTrue(src.delete());
+	}
+
+	// dither seeded per block -> output does not depend on the number of workers
+	@Test
+	public void testDitherDeterministic() throws Exception {
+		File src = createTempFile();
+		createNoise(src);
+
+		File first = transcode(src, 8, 1, Dither.create(Dither.TYPE_TPDF, 2, 42));
+		File second = transcode(src, 8, 3, Dither.create(Dither.TYPE_TPDF, 2, 42));
+		assertArrayEquals(readBytes(first), readBytes(second));
+		assertTrue(first.delete());
+		assertTrue(second.delete());
+		assertTrue(src.delete());
+	}
+
+	// 3/4 LSB sine: 16-bit output not dithered (all 0, as WavFileWriter), 8-bit output dithered
+	@Test
+	public void testSubLsbSignal() throws Exception {
+		File src = createTempFile();
+		WavFileWriter writer = new WavFileWriter(src, 48000, 2, 32);
+		assertTrue(writer.open());
+		float[] samples = new float[FRAMES * 2];
+		for(int i=0; i<samples.length; i++) { samples[i] = (float) Math.sin(i / 20.0) * 3 / 4; }
+		float[] samples16 = new float[samples.length];
+		for(int i=0; i<samples.length; i++) { samples16[i] = samples[i] / 32767; }
+		writer.write(samples16, 0, samples16.length, false);
+		writer.close();
+
+		File dest = transcode(src, 16, 2, Dither.create(Dither.TYPE_TPDF, 2, 42));
+		WavFileReader reader = new WavFileReader(dest);
+		float[] read = new float[samples.length];
+		assertEquals(read.length, reader.read(read, 0, read.length, false));
+		reader.close();
+		for(float sample : read) { assertEquals(0, sample, 0); }
+		assertTrue(dest.delete());
+
+		writer = new WavFileWriter(src, 48000, 2, 32);
+		assertTrue(writer.open());
+		float[] samples8 = new float[samples.length];
+		for(int i=0; i<samples.length; i++) { samples8[i] = samples[i] / 127; }
+		writer.write(samples8, 0, samples8.length, false);
+		writer.close();
+
+		dest = transcode(src, 8, 2, Dither.create(Dither.TYPE_TPDF, 2, 42));
+		byte[] bytes = readBytes(dest);
+		int nonzero = 0;
+		for(int i=44; i<bytes.length; i++) { if(bytes[i] != 127) { nonzero++; } }
+		assertTrue(nonzero > samples.length / 100); // not dithered: 0
+		assertTrue(dest.delete());
+		assertTrue(src.delete());
+	}
+}
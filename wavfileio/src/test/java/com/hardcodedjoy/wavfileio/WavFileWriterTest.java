@@ -0,0 +1,60 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class WavFileWriterTest {
+
+	// open() fails (no such dir): close() / flush() do nothing, no exception
+	@Test
+	public void testCloseAfterFailedOpen() throws Exception {
+		File dir = File.createTempFile("writer", "");
+		assertTrue(dir.delete()); // dir does not exist
+		WavFileWriter writer = new WavFileWriter(new File(dir, "test.wav"), 48000, 2, 16);
+		assertFalse(writer.open());
+		assertFalse(writer.flush());
+		writer.close();
+		assertEquals(0, writer.getLostBytes());
+		assertFalse(dir.exists());
+	}
+
+	@Test
+	public void testCloseWithoutOpen() throws Exception {
+		File file = File.createTempFile("writer", ".wav");
+		assertTrue(file.delete());
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 16);
+		writer.close();
+		assertFalse(file.exists());
+	}
+}
@@ -0,0 +1,127 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+public class WavStreamReaderTest {
+
+	static private final float DELTA = 2.0f / 32768; // writer scales by 32767, reader by 32768
+	static private final int FRAMES = 50000;
+
+	static private float sample(long i) { return ((i % 200) - 100) / 128.0f; }
+
+	static private byte[] createStream() {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		WavStreamWriter writer = new WavStreamWriter(os, 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[FRAMES * 2];
+		for(int i=0; i<samples.length; i++) { samples[i] = sample(i); }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+		return os.toByteArray();
+	}
+
+	static private void checkAll(WavStreamReader reader, int step) {
+		float[] dest = new float[step];
+		long pos = 0;
+		int n;
+		while((n = reader.read(dest, 0, dest.length, false)) > 0) {
+			for(int i=0; i<n; i++) { assertEquals(sample(pos + i), dest[i], DELTA); }
+			pos += n;
+		}
+		assertEquals(FRAMES * 2, pos);
+	}
+
+	// unknown size (streaming header): read until end of stream, small read-ahead block
+	@Test
+	public void testInputStream() throws Exception {
+		WavStreamReader reader = new WavStreamReader(new ByteArrayInputStream(createStream()), 4096);
+		assertFalse(reader.canSeekBackward());
+		checkAll(reader, 999 * 2);
+		reader.close();
+	}
+
+	@Test
+	public void testSeekForward() throws Exception {
+		WavStreamReader reader = new WavStreamReader(new ByteArrayInputStream(createStream()));
+		assertTrue(reader.seek(500000)); // 0.5 s
+		float[] dest = new float[100];
+		assertEquals(100, reader.read(dest, 0, 100, false));
+		for(int i=0; i<100; i++) { assertEquals(sample(24000 * 2 + i), dest[i], DELTA); }
+		reader.close();
+	}
+
+	// non-blocking channel, data arrives in small pieces: read() must not spin or lose data
+	@Test(timeout = 30000)
+	public void testNonBlockingChannel() throws Exception {
+		final byte[] bytes = createStream();
+		final Pipe pipe = Pipe.open();
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for(int i=0; i<bytes.length; i+=1001) {
+						pipe.sink().write(ByteBuffer.wrap(bytes, i, Math.min(1001, bytes.length - i)));
+						if(i % 50050 == 0) { Thread.sleep(5); }
+					}
+					pipe.sink().close();
+				} catch(Exception e) {
+					e.printStackTrace(System.err);
+				}
+			}
+		};
+		producer.start();
+
+		pipe.source().configureBlocking(false);
+		WavStreamReader reader = new WavStreamReader(pipe.source(), 8192);
+
+		float[] dest = new float[1000];
+		long pos = 0;
+		int n;
+		while(true) {
+			n = reader.read(dest, 0, dest.length, false);
+			if(n == 0 && !producer.isAlive()) {
+				n = reader.read(dest, 0, dest.length, false); // data written just before the end
+				if(n == 0) { break; }
+			}
+			for(int i=0; i<n; i++) { assertEquals(sample(pos + i), dest[i], DELTA); }
+			pos += n;
+		}
+		assertEquals(FRAMES * 2, pos);
+		reader.close();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class WavStreamWriterTest {
+
+	static private long get32(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i+1] & 0xFF) << 8) | ((b[i+2] & 0xFF) << 16) | (((long)(b[i+3] & 0xFF)) << 24);
+	}
+
+	// not seekable sink: sizes unknown (0xFFFFFFFF), data follows the 44 byte header
+	@Test
+	public void testStreamSizesUnknown() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		WavStreamWriter writer = new WavStreamWriter(os, 48000, 2, 16);
+		assertTrue(writer.open());
+		assertEquals(1000, writer.write(new float[1000], 0, 1000, false));
+		writer.close();
+
+		byte[] bytes = os.toByteArray();
+		assertEquals(44 + 2000, bytes.length);
+		assertEquals(0xFFFFFFFFL, get32(bytes, 4));
+		assertEquals(0xFFFFFFFFL, get32(bytes, 40));
+		assertEquals(2000, writer.getDataSizeInBytes());
+	}
+
+	// file sink: real sizes written at close(), file is read like any other
+	@Test
+	public void testFileSizesPatched() throws Exception {
+		File file = File.createTempFile("stream", ".wav");
+		file.deleteOnExit();
+		WavStreamWriter writer = new WavStreamWriter(new FileOutputStream(file), 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[2000];
+		for(int i=0; i<samples.length; i++) { samples[i] = ((i % 200) - 100) / 128.0f; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+
+		WavFileReader reader = new WavFileReader(file);
+		assertEquals(1000, reader.getFrameCount());
+		float[] dest = new float[2000];
+		assertEquals(dest.length, reader.read(dest, 0, dest.length, false));
+		reader.close();
+		for(int i=0; i<dest.length; i++) { assertEquals(samples[i], dest[i], 2.0f / 32768); }
+		assertTrue(file.delete());
+	}
+
+	// open() not done / failed: no exception from write() / flush() / close()
+	@Test
+	public void testNotOpen() throws Exception {
+		WavStreamWriter writer = new WavStreamWriter(new ByteArrayOutputStream(), 48000, 2, 16);
+		assertEquals(0, writer.write(new float[100], 0, 100, false));
+		assertTrue(!writer.flush());
+		writer.close();
+	}
+
+	// sink fails at the last flush (broken pipe, disk full): still closed
+	@Test
+	public void testCloseAfterFailedFlush() throws Exception {
+		final boolean[] closed = new boolean[1];
+		OutputStream os = new OutputStream() {
+			private int count;
+			@Override
+			public void write(int b) throws IOException { write(new byte[] { (byte) b }, 0, 1); }
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if(count + len > 44) { throw new IOException("Broken pipe"); } // header only
+				count += len;
+			}
+			@Override
+			public void close() { closed[0] = true; }
+		};
+		WavStreamWriter writer = new WavStreamWriter(os, 48000, 2, 16);
+		writer.setWriteBlockSize(1024 * 1024); // all data pending until close()
+		assertTrue(writer.open());
+		writer.write(new float[1000], 0, 1000, false);
+		writer.close();
+		assertTrue(closed[0]);
+	}
+}
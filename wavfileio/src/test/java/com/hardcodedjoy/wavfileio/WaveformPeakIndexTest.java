@@ -0,0 +1,87 @@
+/*
+
+MIT License
+
+Copyright © 2024 HARDCODED JOY S.R.L. (https://hardcodedjoy.com)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+*/
+
+package com.hardcodedjoy.wavfileio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class WaveformPeakIndexTest {
+
+	// min / max per pixel: same as computed from all samples (16 bit peak values)
+	@Test
+	public void testPeaks() throws Exception {
+		File file = File.createTempFile("peaks", ".wav");
+		file.deleteOnExit();
+		int frames = 100000;
+		WavFileWriter writer = new WavFileWriter(file, 48000, 2, 16);
+		assertTrue(writer.open());
+		float[] samples = new float[frames * 2];
+		Random random = new Random(1);
+		for(int i=0; i<samples.length; i++) { samples[i] = (random.nextFloat() - 0.5f) * (i % 7) / 7; }
+		writer.write(samples, 0, samples.length, false);
+		writer.close();
+
+		WavFileReader reader = new WavFileReader(file);
+		reader.read(samples, 0, samples.length, false); // as decoded
+		reader.close();
+
+		WaveformPeakIndex index = WaveformPeakIndex.build(file);
+		assertTrue(index.save());
+		WaveformPeakIndex loaded = WaveformPeakIndex.load(file);
+		assertNotNull(loaded);
+		assertEquals(index.getNumLevels(), loaded.getNumLevels());
+
+		int pixels = 100;
+		float[] min = new float[pixels];
+		float[] max = new float[pixels];
+		assertEquals(pixels, loaded.getPeaks(1, 0, frames, pixels, min, max, null));
+
+		// 1000 frames per pixel: level with 256 frame buckets, pixel borders not on buckets
+		// -> compare with the min / max of the buckets covering each pixel
+		for(int p=0; p<pixels; p++) {
+			int from = (p * 1000 / 256) * 256;
+			int to = Math.min(((p * 1000 + 999) / 256 + 1) * 256, frames);
+			float lo = Float.MAX_VALUE;
+			float hi = -Float.MAX_VALUE;
+			for(int i=from; i<to; i++) {
+				lo = Math.min(lo, samples[2*i+1]);
+				hi = Math.max(hi, samples[2*i+1]);
+			}
+			assertEquals(lo, min[p], 1e-4f);
+			assertEquals(hi, max[p], 1e-4f);
+		}
+
+		assertTrue(WaveformPeakIndex.getSidecarFile(file).delete());
+		assertTrue(file.delete());
+	}
+}